@@ -0,0 +1,282 @@
+package com.krushna.smallchat.cluster;
+
+import com.krushna.smallchat.model.ChatMessage;
+import com.krushna.smallchat.repository.MessageCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Full-mesh fan-out between chat nodes. Every node listens on {@code smallchat.cluster.port} and keeps one outbound
+ * connection per configured peer, and forwards each message it originates straight to every peer. Nothing is
+ * re-forwarded, so a message crosses each link once. Frames are {@code length | MessageCodec record}.
+ * Arrivals are de-duplicated by message id before reaching the listener, which covers reconnect resends and
+ * overlapping peer lists.
+ * <p>
+ * Inbound links must present {@code smallchat.cluster.secret} within {@link #HANDSHAKE_TIMEOUT_MS}, and at most one
+ * inbound link per configured peer is kept open.
+ */
+@Component
+public class PeerFanout {
+
+    private static final Logger log = LoggerFactory.getLogger(PeerFanout.class);
+
+    private static final int MAGIC = 0x534D434C; // "SMCL"
+    private static final int MAX_FRAME_BYTES = 16 * 1024 * 1024;
+    private static final int SEEN_IDS = 10_000;
+    private static final int HANDSHAKE_TIMEOUT_MS = 5000;
+
+    private final boolean enabled;
+    private final String secret;
+    private final List<Peer> peers = new ArrayList<>();
+    private final AtomicInteger inbound = new AtomicInteger();
+    private int maxInbound;
+    private final Map<String, Boolean> seen = Collections.synchronizedMap(new LinkedHashMap<>(SEEN_IDS * 2, 0.75f, false) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > SEEN_IDS;
+        }
+    });
+    private volatile Consumer<ChatMessage> listener = m -> { };
+    private volatile boolean running = true;
+    private ServerSocket server;
+
+    public PeerFanout(
+            @Value("${smallchat.cluster.enabled:false}") boolean enabled,
+            @Value("${smallchat.cluster.port:7070}") int port,
+            @Value("${smallchat.cluster.bind-address:}") String bindAddress,
+            @Value("${smallchat.cluster.peers:}") String peers,
+            @Value("${smallchat.cluster.secret:}") String secret,
+            @Value("${smallchat.cluster.queue-capacity:10000}") int queueCapacity
+    ) {
+        this.enabled = enabled;
+        this.secret = secret;
+        if (!enabled) return;
+        if (secret == null || secret.isBlank()) {
+            // Anyone who can reach the port could otherwise inject messages into every room
+            throw new IllegalStateException("smallchat.cluster.secret must be set when smallchat.cluster.enabled=true");
+        }
+        for (String peer : peers.split(",")) {
+            String p = peer.trim();
+            if (p.isEmpty()) continue;
+            int colon = p.lastIndexOf(':');
+            if (colon <= 0) throw new IllegalArgumentException("Invalid smallchat.cluster.peers entry (expected host:port): " + p);
+            this.peers.add(new Peer(p.substring(0, colon), Integer.parseInt(p.substring(colon + 1)), queueCapacity));
+        }
+        this.maxInbound = Math.max(1, this.peers.size());
+        try {
+            server = new ServerSocket();
+            server.setReuseAddress(true);
+            server.bind(bindAddress.isBlank() ? new InetSocketAddress(port) : new InetSocketAddress(bindAddress.trim(), port));
+        } catch (IOException e) {
+            throw new IllegalStateException("Cluster port " + port + " unavailable", e);
+        }
+        Thread acceptor = new Thread(this::acceptLoop, "cluster-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        this.peers.forEach(Peer::start);
+        log.info("Cluster fan-out listening on {}, peers: {}", server.getLocalSocketAddress(), this.peers);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Receives messages that arrive from other nodes, at most once per id.
+     */
+    public void setListener(Consumer<ChatMessage> listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Sends a message that originated on this node to every peer.
+     */
+    public void forward(ChatMessage message) {
+        if (!enabled) return;
+        markSeen(message.getId());
+        if (peers.isEmpty()) return;
+        byte[] frame = MessageCodec.encode(message);
+        for (Peer peer : peers) {
+            peer.enqueue(frame);
+        }
+    }
+
+    public int getPendingCount() {
+        int pending = 0;
+        for (Peer peer : peers) pending += peer.queue.size();
+        return pending;
+    }
+
+    private boolean markSeen(String id) {
+        return id == null || seen.put(id, Boolean.TRUE) == null;
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket socket = server.accept();
+                if (inbound.incrementAndGet() > maxInbound) {
+                    inbound.decrementAndGet();
+                    log.warn("Rejected cluster connection from {}: {} inbound links already open",
+                            socket.getRemoteSocketAddress(), maxInbound);
+                    socket.close();
+                    continue;
+                }
+                Thread reader = new Thread(() -> readLoop(socket), "cluster-in-" + socket.getRemoteSocketAddress());
+                reader.setDaemon(true);
+                reader.start();
+            } catch (IOException e) {
+                if (running) log.warn("Cluster accept failed: {}", e.getMessage());
+            }
+        }
+    }
+
+    private void readLoop(Socket socket) {
+        try (socket; DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()))) {
+            socket.setSoTimeout(HANDSHAKE_TIMEOUT_MS);
+            // Detects peers that vanished without closing, so their slot is freed for the reconnect
+            socket.setKeepAlive(true);
+            if (in.readInt() != MAGIC || !MessageDigest.isEqual(secret.getBytes(StandardCharsets.UTF_8),
+                    in.readUTF().getBytes(StandardCharsets.UTF_8))) {
+                log.warn("Rejected cluster connection from {}: bad handshake", socket.getRemoteSocketAddress());
+                return;
+            }
+            socket.setSoTimeout(0);
+            log.info("Cluster peer connected from {}", socket.getRemoteSocketAddress());
+            while (running) {
+                int len = in.readInt();
+                if (len <= 0 || len > MAX_FRAME_BYTES) throw new IOException("Bad frame length " + len);
+                byte[] frame = new byte[len];
+                in.readFully(frame);
+                ChatMessage message = MessageCodec.decode(ByteBuffer.wrap(frame));
+                if (!markSeen(message.getId())) continue;
+                try {
+                    listener.accept(message);
+                } catch (Exception e) {
+                    log.warn("Failed to deliver cluster message {}: {}", message.getId(), e.getMessage());
+                }
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            if (running) log.info("Cluster peer {} disconnected: {}", socket.getRemoteSocketAddress(), e.getMessage());
+        } finally {
+            inbound.decrementAndGet();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (!enabled) return;
+        running = false;
+        try {
+            server.close();
+        } catch (IOException ignored) {
+            // shutting down
+        }
+        peers.forEach(Peer::stop);
+    }
+
+    /**
+     * Outbound link to one peer: a bounded queue drained by a writer thread that reconnects with backoff.
+     */
+    private final class Peer {
+        private final String host;
+        private final int port;
+        private final BlockingQueue<byte[]> queue;
+        private final Thread writer;
+        private final AtomicLong dropped = new AtomicLong();
+
+        Peer(String host, int port, int capacity) {
+            this.host = host;
+            this.port = port;
+            this.queue = new ArrayBlockingQueue<>(Math.max(1, capacity));
+            this.writer = new Thread(this::run, "cluster-out-" + host + ":" + port);
+            this.writer.setDaemon(true);
+        }
+
+        void start() {
+            writer.start();
+        }
+
+        void stop() {
+            writer.interrupt();
+        }
+
+        void enqueue(byte[] frame) {
+            // A peer that stays down must not grow the heap; it catches up from storage instead
+            if (!queue.offer(frame)) {
+                long n = dropped.incrementAndGet();
+                if (n % 1000 == 1) log.warn("Cluster queue to {} full, dropped {} messages so far", this, n);
+            }
+        }
+
+        private void run() {
+            long backoffMs = 500;
+            byte[] pending = null;
+            while (running) {
+                try (Socket socket = new Socket()) {
+                    socket.connect(new InetSocketAddress(host, port), 5000);
+                    socket.setTcpNoDelay(true);
+                    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 64 * 1024));
+                    out.writeInt(MAGIC);
+                    out.writeUTF(secret);
+                    out.flush();
+                    log.info("Cluster link to {} up", this);
+                    backoffMs = 500;
+                    while (running) {
+                        if (pending == null) pending = queue.poll(1, TimeUnit.SECONDS);
+                        if (pending == null) continue;
+                        out.writeInt(pending.length);
+                        out.write(pending);
+                        pending = null;
+                        // Flush once the burst is written rather than per frame
+                        if (queue.isEmpty()) out.flush();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (IOException e) {
+                    if (!running) return;
+                    log.debug("Cluster link to {} down: {}", this, e.getMessage());
+                    try {
+                        Thread.sleep(backoffMs);
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    backoffMs = Math.min(backoffMs * 2, 10_000);
+                }
+            }
+        }
+
+        @Override
+        public String toString() {
+            return host + ":" + port;
+        }
+    }
+}
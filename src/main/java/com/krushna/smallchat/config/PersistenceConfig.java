@@ -0,0 +1,55 @@
+package com.krushna.smallchat.config;
+
+import com.krushna.smallchat.repository.AzureTableMessageRepository;
+import com.krushna.smallchat.repository.MessageRepository;
+import com.krushna.smallchat.repository.SegmentedLogMessageRepository;
+import com.krushna.smallchat.repository.TieredMessageRepository;
+import com.krushna.smallchat.repository.TimedMessageRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+/**
+ * Chooses the {@link MessageRepository} the rest of the app sees, via {@code smallchat.persistence.backend}:
+ * {@code azure} (default), {@code local} (segmented log on disk) or {@code tiered} (local log in front of Azure).
+ * Each backend is wrapped in a {@link TimedMessageRepository}, so both tiers of {@code tiered} are timed separately.
+ */
+@Configuration
+public class PersistenceConfig {
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnExpression("'${smallchat.persistence.backend:azure}' == 'local' or '${smallchat.persistence.backend:azure}' == 'tiered'")
+    public SegmentedLogMessageRepository segmentedLogMessageRepository(
+            @Value("${smallchat.local-log.dir:./data/messages}") String dir,
+            @Value("${smallchat.local-log.segment-size-mb:64}") int segmentSizeMb
+    ) throws IOException {
+        return new SegmentedLogMessageRepository(Paths.get(dir), Math.max(1, Math.min(segmentSizeMb, 1024)) * 1024 * 1024);
+    }
+
+    // The local log bean owns its own shutdown; don't let close() be inferred here as well
+    @Bean(destroyMethod = "")
+    @Primary
+    public MessageRepository messageRepository(
+            @Value("${smallchat.persistence.backend:azure}") String backend,
+            AzureTableMessageRepository azure,
+            ObjectProvider<SegmentedLogMessageRepository> local,
+            MeterRegistry registry
+    ) {
+        switch (backend.trim().toLowerCase()) {
+            case "local":
+                return new TimedMessageRepository(local.getObject(), "local", registry);
+            case "tiered":
+                return new TieredMessageRepository(new TimedMessageRepository(local.getObject(), "local", registry),
+                        new TimedMessageRepository(azure, "azure", registry));
+            default:
+                return new TimedMessageRepository(azure, "azure", registry);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.krushna.smallchat.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Thread creation for the app's own pools and workers, switching to virtual threads when
+ * {@code spring.threads.virtual.enabled} is set. The Java 21 API is looked up reflectively so the default build
+ * still targets Java 17; on an older JVM everything falls back to platform threads.
+ */
+public final class VirtualThreads {
+
+    private static final Logger log = LoggerFactory.getLogger(VirtualThreads.class);
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * Factory for virtual threads named {@code prefix0, prefix1, ...}, or null when the JVM has none.
+     */
+    public static ThreadFactory factory(String prefix) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, prefix, 0L);
+            return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            log.warn("Virtual threads need Java 21; {} falls back to platform threads", prefix);
+            return null;
+        }
+    }
+
+    /**
+     * One virtual thread per task when {@code virtual}, otherwise a fixed pool of {@code platformThreads} daemon threads.
+     * Callers that need a concurrency cap enforce it themselves; a virtual executor has none.
+     */
+    public static ExecutorService executor(String prefix, int platformThreads, boolean virtual) {
+        ThreadFactory factory = virtual ? factory(prefix) : null;
+        if (factory != null) {
+            try {
+                return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+                        .invoke(null, factory);
+            } catch (ReflectiveOperationException e) {
+                log.warn("Could not create a virtual-thread executor for {}: {}", prefix, e.getMessage());
+            }
+        }
+        AtomicInteger ids = new AtomicInteger();
+        return Executors.newFixedThreadPool(Math.max(1, platformThreads), r -> {
+            Thread t = new Thread(r, prefix + ids.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * An unstarted worker thread: virtual when {@code virtual}, otherwise a daemon platform thread.
+     */
+    public static Thread newThread(String name, Runnable task, boolean virtual) {
+        ThreadFactory factory = virtual ? factory(name) : null;
+        Thread t;
+        if (factory != null) {
+            t = factory.newThread(task);
+            t.setName(name);
+        } else {
+            t = new Thread(task, name);
+            t.setDaemon(true);
+        }
+        return t;
+    }
+}
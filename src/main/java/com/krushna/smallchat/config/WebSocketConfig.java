@@ -1,26 +1,131 @@
 package com.krushna.smallchat.config;
 
+import com.krushna.smallchat.monitoring.WebSocketMetrics;
+import com.krushna.smallchat.websocket.SharedFrameEncoding;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
+import org.springframework.web.socket.config.annotation.SockJsServiceRegistration;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
+
+import java.util.concurrent.ThreadFactory;
 
 @Configuration
 @EnableWebSocketMessageBroker
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
+    private static final Logger log = LoggerFactory.getLogger(WebSocketConfig.class);
+
+    @Autowired
+    private WebSocketMetrics metrics;
+
+    @Autowired
+    private SharedFrameEncoding sharedFrames;
+
+    // pooled (platform threads) or virtual (needs Java 21, falls back to pooled); the virtual profile sets it
+    @Value("${smallchat.websocket.executor:pooled}")
+    private String executorMode;
+
+    @Value("${smallchat.websocket.inbound.core-pool-size:8}")
+    private int inboundCorePoolSize;
+
+    @Value("${smallchat.websocket.inbound.max-pool-size:32}")
+    private int inboundMaxPoolSize;
+
+    @Value("${smallchat.websocket.inbound.queue-capacity:10000}")
+    private int inboundQueueCapacity;
+
+    @Value("${smallchat.websocket.outbound.core-pool-size:16}")
+    private int outboundCorePoolSize;
+
+    @Value("${smallchat.websocket.outbound.max-pool-size:64}")
+    private int outboundMaxPoolSize;
+
+    @Value("${smallchat.websocket.outbound.queue-capacity:50000}")
+    private int outboundQueueCapacity;
+
+    @Value("${smallchat.websocket.send-time-limit-ms:10000}")
+    private int sendTimeLimitMs;
+
+    @Value("${smallchat.websocket.send-buffer-size-limit:524288}")
+    private int sendBufferSizeLimit;
+
+    @Value("${smallchat.websocket.message-size-limit:65536}")
+    private int messageSizeLimit;
+
+    @Value("${smallchat.websocket.preserve-publish-order:false}")
+    private boolean preservePublishOrder;
+
     @Override
     public void configureMessageBroker(MessageBrokerRegistry config) {
-        // Enable a simple memory-based message broker to carry the greeting messages back to the client
+        // Enable a simple memory-based message broker to carry the greeting messages back to the client.
+        // It only reaches this node's sessions; with smallchat.cluster.enabled, ChatBroadcaster relays
+        // every message to the other nodes' brokers (see PeerFanout)
         config.enableSimpleBroker("/topic");
         // Designates the "/app" prefix for messages that are bound for @MessageMapping-annotated methods
         config.setApplicationDestinationPrefixes("/app");
+        // Per-session ordering of outbound messages, at the cost of one send in flight per session
+        config.setPreservePublishOrder(preservePublishOrder);
     }
 
     @Override
     public void registerStompEndpoints(StompEndpointRegistry registry) {
         // Register the "/ws" endpoint, enabling SockJS fallback options
-        registry.addEndpoint("/ws").withSockJS();
+        SockJsServiceRegistration sockJs = registry.addEndpoint("/ws").withSockJS();
+        if (sharedFrames.isEnabled()) {
+            sockJs.setMessageCodec(sharedFrames.sockJsMessageCodec());
+        }
+    }
+
+    @Override
+    public void configureClientInboundChannel(ChannelRegistration registration) {
+        registration.taskExecutor(channelExecutor("inbound", inboundCorePoolSize, inboundMaxPoolSize, inboundQueueCapacity));
+    }
+
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        registration.taskExecutor(channelExecutor("outbound", outboundCorePoolSize, outboundMaxPoolSize, outboundQueueCapacity));
+    }
+
+    @Override
+    public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+        // A session whose unsent messages exceed the buffer, or whose current send blocks past the time limit,
+        // is closed (SESSION_NOT_RELIABLE) so it cannot hold outbound threads hostage
+        registration.setSendTimeLimit(sendTimeLimitMs)
+                .setSendBufferSizeLimit(sendBufferSizeLimit)
+                .setMessageSizeLimit(messageSizeLimit)
+                .addDecoratorFactory(metrics.sessionTracker())
+                .addDecoratorFactory(sharedFrames.sessionDecorator());
+    }
+
+    private ThreadPoolTaskExecutor channelExecutor(String channel, int corePoolSize, int maxPoolSize, int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix("ws-" + channel + "-");
+        ThreadFactory virtual = "virtual".equalsIgnoreCase(executorMode.trim()) ? VirtualThreads.factory("ws-" + channel + "-") : null;
+        if (virtual != null) {
+            // Threads cost next to nothing, so run every task at once instead of queueing behind slow sends
+            executor.setThreadFactory(virtual);
+            executor.setCorePoolSize(Math.max(maxPoolSize, 1024));
+            executor.setMaxPoolSize(Math.max(maxPoolSize, 1024));
+            executor.setAllowCoreThreadTimeOut(true);
+        } else {
+            executor.setCorePoolSize(corePoolSize);
+            executor.setMaxPoolSize(Math.max(corePoolSize, maxPoolSize));
+        }
+        executor.setKeepAliveSeconds(60);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setRejectedExecutionHandler(metrics.rejectionHandler(channel));
+        metrics.bindExecutor(channel, executor);
+        log.info("STOMP {} channel: {} threads, core={} max={} queue={}", channel, virtual != null ? "virtual" : "platform",
+                executor.getCorePoolSize(), executor.getMaxPoolSize(), queueCapacity);
+        return executor;
     }
 }
@@ -1,42 +1,214 @@
 package com.krushna.smallchat.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.krushna.smallchat.model.ChatMessage;
+import com.krushna.smallchat.model.MessagePage;
+import com.krushna.smallchat.service.MessageKey;
 import com.krushna.smallchat.service.MessageStorageService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import jakarta.servlet.http.HttpServletRequest;
 import java.util.HashMap;
-import java.util.List;
+import java.util.Iterator;
+import java.util.Locale;
 import java.util.Map;
+import java.util.zip.GZIPOutputStream;
 
 @RestController
 @RequestMapping("/api")
 @CrossOrigin(origins = "*")
 public class ChatRestController {
 
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final int MAX_SEARCH_PAGE_SIZE = 100;
+    private static final int EXPORT_BUFFER_BYTES = 8192;
+    private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+
     @Autowired
     private MessageStorageService messageStorageService;
 
-    @GetMapping("/messages")
-    public ResponseEntity<List<ChatMessage>> getAllMessages(
-            @RequestParam(name = "includeSystem", defaultValue = "true") boolean includeSystem) {
-        return ResponseEntity.ok(messageStorageService.getAllMessages(includeSystem));
+    @Autowired
+    private ConditionalResponses conditionalResponses;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    /**
+     * Without paging parameters returns what the room holds in memory as a plain list: the whole retention window
+     * unless the memory caps have evicted its oldest part, which only the paged form and the export read.
+     * With {@code before}, {@code after} or {@code limit} returns a {@link MessagePage} instead;
+     * cursors are message ids or timestamps. {@code sender}, {@code from} and {@code to} filter either form to one
+     * sender and/or a time range ({@code from <= ts < to}) using the sender index rather than a scan.
+     * {@code /messages} is the default room. Answers {@code If-None-Match} with 304 while the store is unchanged.
+     */
+    @GetMapping({"/messages", "/rooms/{room}/messages"})
+    public ResponseEntity<?> getAllMessages(
+            HttpServletRequest request,
+            @PathVariable(name = "room", required = false) String room,
+            @RequestParam(name = "includeSystem", defaultValue = "true") boolean includeSystem,
+            @RequestParam(name = "before", required = false) String before,
+            @RequestParam(name = "after", required = false) String after,
+            @RequestParam(name = "limit", required = false) Integer limit,
+            @RequestParam(name = "sender", required = false) String sender,
+            @RequestParam(name = "from", required = false) String from,
+            @RequestParam(name = "to", required = false) String to) {
+        String roomId = room != null ? room : ChatMessage.DEFAULT_ROOM;
+        if (!ChatMessage.isValidRoom(roomId)) {
+            return badRequest("Invalid room: " + roomId);
+        }
+        String senderFilter = sender != null && !sender.isBlank() ? sender : null;
+        boolean filtered = senderFilter != null || from != null || to != null;
+        if (before == null && after == null && limit == null && !filtered) {
+            return conditionalResponses.respond(request, () -> messageStorageService.getAllMessages(roomId, includeSystem));
+        }
+        try {
+            if (before == null && after == null && limit == null) {
+                return conditionalResponses.respond(request, () -> messageStorageService.getMessagesBetween(roomId,
+                        senderFilter, messageStorageService.resolveCursor(roomId, from),
+                        messageStorageService.resolveCursor(roomId, to), includeSystem));
+            }
+            int capped = Math.max(1, Math.min(limit != null ? limit : DEFAULT_PAGE_SIZE, MAX_PAGE_SIZE));
+            return conditionalResponses.respond(request, () -> {
+                MessageKey afterKey = MessageKey.later(messageStorageService.resolveCursor(roomId, after),
+                        messageStorageService.resolveCursor(roomId, from));
+                MessageKey beforeKey = MessageKey.earlier(messageStorageService.resolveCursor(roomId, before),
+                        messageStorageService.resolveCursor(roomId, to));
+                return messageStorageService.getMessagePage(roomId, senderFilter, afterKey, beforeKey, capped, includeSystem);
+            });
+        } catch (IllegalArgumentException e) {
+            return badRequest(e.getMessage());
+        }
     }
 
-    @GetMapping("/messages/recent")
-    public ResponseEntity<List<ChatMessage>> getRecentMessages(
+    @GetMapping({"/messages/recent", "/rooms/{room}/messages/recent"})
+    public ResponseEntity<?> getRecentMessages(
+            HttpServletRequest request,
+            @PathVariable(name = "room", required = false) String room,
             @RequestParam(defaultValue = "50") int limit,
             @RequestParam(name = "includeSystem", defaultValue = "true") boolean includeSystem) {
-        return ResponseEntity.ok(messageStorageService.getRecentMessages(limit, includeSystem));
+        String roomId = room != null ? room : ChatMessage.DEFAULT_ROOM;
+        if (!ChatMessage.isValidRoom(roomId)) {
+            return badRequest("Invalid room: " + roomId);
+        }
+        return conditionalResponses.respond(request, () -> messageStorageService.getRecentMessages(roomId, limit, includeSystem));
+    }
+
+    /**
+     * Catch-up for a reconnecting client: only the messages after {@code since}, the last id it saw.
+     * A {@code tooFarBehind} reply means reload history with the paged {@code /messages} instead.
+     */
+    @GetMapping({"/messages/sync", "/rooms/{room}/messages/sync"})
+    public ResponseEntity<?> syncMessages(
+            @PathVariable(name = "room", required = false) String room,
+            @RequestParam(name = "since") String since,
+            @RequestParam(name = "includeSystem", defaultValue = "true") boolean includeSystem) {
+        String roomId = room != null ? room : ChatMessage.DEFAULT_ROOM;
+        if (!ChatMessage.isValidRoom(roomId)) {
+            return badRequest("Invalid room: " + roomId);
+        }
+        return ResponseEntity.ok(messageStorageService.getMessagesSince(roomId, since, includeSystem));
+    }
+
+    /**
+     * Ranked full-text search over a room's chat messages; every word of {@code q} must match the content or sender.
+     * Page with {@code offset} and {@code limit}.
+     */
+    @GetMapping({"/messages/search", "/rooms/{room}/messages/search"})
+    public ResponseEntity<?> searchMessages(
+            HttpServletRequest request,
+            @PathVariable(name = "room", required = false) String room,
+            @RequestParam(name = "q") String query,
+            @RequestParam(name = "offset", defaultValue = "0") int offset,
+            @RequestParam(name = "limit", defaultValue = "20") int limit) {
+        String roomId = room != null ? room : ChatMessage.DEFAULT_ROOM;
+        if (!ChatMessage.isValidRoom(roomId)) {
+            return badRequest("Invalid room: " + roomId);
+        }
+        int from = Math.max(0, offset);
+        int capped = Math.max(1, Math.min(limit, MAX_SEARCH_PAGE_SIZE));
+        try {
+            return conditionalResponses.respond(request, () -> messageStorageService.search(roomId, query, from, capped));
+        } catch (IllegalStateException e) {
+            return badRequest(e.getMessage());
+        }
+    }
+
+    /**
+     * Streams a room's history straight from the store, oldest first, without building the result in memory.
+     * {@code from} and {@code to} are ids or timestamps, as for paging, and bound the range exclusively (a timestamp
+     * {@code from} includes messages stamped at it). {@code format} is {@code ndjson} (one message per line, default)
+     * or {@code json} (one array). Gzipped when the client accepts it.
+     */
+    @GetMapping({"/messages/export", "/rooms/{room}/messages/export"})
+    public ResponseEntity<StreamingResponseBody> exportMessages(
+            @PathVariable(name = "room", required = false) String room,
+            @RequestParam(name = "includeSystem", defaultValue = "true") boolean includeSystem,
+            @RequestParam(name = "from", required = false) String from,
+            @RequestParam(name = "to", required = false) String to,
+            @RequestParam(name = "format", defaultValue = "ndjson") String format,
+            @RequestHeader(name = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        String roomId = room != null ? room : ChatMessage.DEFAULT_ROOM;
+        if (!ChatMessage.isValidRoom(roomId)) {
+            return streamedError("Invalid room: " + roomId);
+        }
+        boolean ndjson = format.equalsIgnoreCase("ndjson");
+        if (!ndjson && !format.equalsIgnoreCase("json")) {
+            return streamedError("Invalid format. Allowed: ndjson|json");
+        }
+        Iterator<ChatMessage> messages;
+        try {
+            MessageKey after = messageStorageService.resolveCursor(roomId, from);
+            MessageKey before = messageStorageService.resolveCursor(roomId, to);
+            messages = messageStorageService.iterateMessages(roomId, after, before, includeSystem);
+        } catch (IllegalArgumentException e) {
+            return streamedError(e.getMessage());
+        }
+        boolean gzip = acceptEncoding != null && acceptEncoding.toLowerCase(Locale.ROOT).contains("gzip");
+
+        StreamingResponseBody body = out -> {
+            GZIPOutputStream gz = gzip ? new GZIPOutputStream(out, EXPORT_BUFFER_BYTES) : null;
+            try (JsonGenerator json = objectMapper.getFactory().createGenerator(gz != null ? gz : out)) {
+                // The container owns the response stream; only the generator and gzip trailer are ours to finish
+                json.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                if (!ndjson) json.writeStartArray();
+                while (messages.hasNext()) {
+                    json.writeObject(messages.next());
+                    if (ndjson) json.writeRaw('\n');
+                }
+                if (!ndjson) json.writeEndArray();
+            }
+            if (gz != null) gz.finish();
+        };
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(ndjson ? NDJSON : MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        return response.body(body);
+    }
+
+    // Rooms with their current message counts
+    @GetMapping("/rooms")
+    public ResponseEntity<?> getRooms(HttpServletRequest request) {
+        return conditionalResponses.respond(request, messageStorageService::getRooms);
     }
 
     @GetMapping("/stats")
-    public ResponseEntity<Map<String, Object>> getChatStats() {
-        Map<String, Object> stats = new HashMap<>();
-        stats.put("totalMessages", messageStorageService.getMessageCount());
-        stats.put("retentionDays", messageStorageService.getMessageRetentionDays());
-        return ResponseEntity.ok(stats);
+    public ResponseEntity<?> getChatStats(HttpServletRequest request) {
+        return conditionalResponses.respond(request, () -> {
+            Map<String, Object> stats = new HashMap<>();
+            stats.put("totalMessages", messageStorageService.getMessageCount());
+            stats.put("retentionDays", messageStorageService.getMessageRetentionDays());
+            stats.put("rooms", messageStorageService.getRooms().size());
+            stats.put("estimatedBytes", messageStorageService.getEstimatedBytes());
+            return stats;
+        });
     }
 
     @PostMapping("/messages/clear")
@@ -55,6 +227,20 @@ public class ChatRestController {
         return ResponseEntity.ok(resp);
     }
 
+    private ResponseEntity<StreamingResponseBody> streamedError(String message) {
+        Map<String, String> error = new HashMap<>();
+        error.put("error", message);
+        return ResponseEntity.badRequest()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(out -> objectMapper.writeValue(out, error));
+    }
+
+    private ResponseEntity<Map<String, String>> badRequest(String message) {
+        Map<String, String> error = new HashMap<>();
+        error.put("error", message);
+        return ResponseEntity.badRequest().body(error);
+    }
+
     @GetMapping("/health")
     public ResponseEntity<Map<String, String>> healthCheck() {
         Map<String, String> health = new HashMap<>();
@@ -0,0 +1,137 @@
+package com.krushna.smallchat.controller;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.krushna.smallchat.service.MessageStorageService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+import jakarta.servlet.http.HttpServletRequest;
+import java.io.UncheckedIOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * Conditional GET for read endpoints whose answer only changes when the message store does. The ETag is the
+ * store's {@link MessageStorageService#getVersionTag() version}, so a client that already has the current version
+ * gets a 304 before any message is read. Otherwise the last serialized body for the same path and query is reused
+ * while the version is unchanged, and built and cached when it is not. Only bodies of the current version are kept,
+ * one per path and query, within a total byte budget.
+ */
+@Component
+public class ConditionalResponses {
+
+    @Autowired
+    private MessageStorageService messageStorageService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    // Distinct path + query strings kept; clients pick cursors and limits freely, so the map is reset when full
+    @Value("${smallchat.http.cached-bodies:256}")
+    private int maxEntries;
+
+    // Total JSON bytes kept; a body over a quarter of this is served but not cached
+    @Value("${smallchat.http.cached-bytes:16777216}")
+    private long maxBytes;
+
+    private final ConcurrentMap<String, CachedBody> bodies = new ConcurrentHashMap<>();
+    // Version every cached body belongs to, and their total size; guarded by this
+    private String cachedTag;
+    private long cachedBytes;
+
+    /**
+     * 304 when the request's {@code If-None-Match} (or, without one, {@code If-Modified-Since}) matches the current
+     * version; otherwise 200 with the JSON of {@code body}, from the cache when possible.
+     */
+    public ResponseEntity<?> respond(HttpServletRequest request, Supplier<?> body) {
+        String tag = messageStorageService.getVersionTag();
+        long lastModified = messageStorageService.getLastModified();
+        String etag = "\"" + tag + "\"";
+        long now = System.currentTimeMillis();
+        // HTTP dates have whole seconds. A change in the current second may be followed by another in the same
+        // second, which the client could not tell apart, so Last-Modified is only sent once its second is over
+        HttpHeaders headers = new HttpHeaders();
+        headers.setETag(etag);
+        if (lastModified / 1000 < now / 1000) headers.setLastModified(lastModified);
+        if (isNotModified(request, etag, lastModified, now)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .headers(headers)
+                    .cacheControl(CacheControl.noCache())
+                    .build();
+        }
+
+        String key = request.getRequestURI() + "?" + request.getQueryString();
+        CachedBody cached = bodies.get(key);
+        byte[] json;
+        if (cached != null && cached.tag.equals(tag)) {
+            json = cached.json;
+        } else {
+            try {
+                json = objectMapper.writeValueAsBytes(body.get());
+            } catch (JsonProcessingException e) {
+                throw new UncheckedIOException(e);
+            }
+            // Cached under the version read before building, so a change made meanwhile is never hidden
+            cache(key, tag, json);
+        }
+        return ResponseEntity.ok()
+                .headers(headers)
+                .cacheControl(CacheControl.noCache())
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(json);
+    }
+
+    private synchronized void cache(String key, String tag, byte[] json) {
+        if (!tag.equals(cachedTag)) {
+            // Built from a version that has already moved on: nobody can reuse it
+            if (!tag.equals(messageStorageService.getVersionTag())) return;
+            // The version moved on, so every body cached so far is stale
+            bodies.clear();
+            cachedBytes = 0;
+            cachedTag = tag;
+        }
+        if (json.length > maxBytes / 4) return;
+        CachedBody previous = bodies.remove(key);
+        if (previous != null) cachedBytes -= previous.json.length;
+        if (bodies.size() >= maxEntries || cachedBytes + json.length > maxBytes) {
+            bodies.clear();
+            cachedBytes = 0;
+        }
+        bodies.put(key, new CachedBody(tag, json));
+        cachedBytes += json.length;
+    }
+
+    private static boolean isNotModified(HttpServletRequest request, String etag, long lastModified, long now) {
+        String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch != null) {
+            for (String candidate : ifNoneMatch.split(",")) {
+                String c = candidate.trim();
+                if (c.startsWith("W/")) c = c.substring(2);
+                if (c.equals("*") || c.equals(etag)) return true;
+            }
+            return false;
+        }
+        long ifModifiedSince;
+        try {
+            ifModifiedSince = request.getDateHeader(HttpHeaders.IF_MODIFIED_SINCE);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        if (ifModifiedSince < 0) return false;
+        // Unchanged only if the last change falls within or before that second, and the second is over, so no later
+        // change in it can be missed
+        long secondEnd = ifModifiedSince / 1000 * 1000 + 1000;
+        return lastModified < secondEnd && secondEnd <= now;
+    }
+
+    private record CachedBody(String tag, byte[] json) {
+    }
+}
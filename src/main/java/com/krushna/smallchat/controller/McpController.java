@@ -1,13 +1,14 @@
 package com.krushna.smallchat.controller;
 
 import com.krushna.smallchat.model.ChatMessage;
+import com.krushna.smallchat.service.ChatBroadcaster;
+import com.krushna.smallchat.service.MessageKey;
 import com.krushna.smallchat.service.MessageStorageService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.web.bind.annotation.*;
 
 import jakarta.servlet.http.HttpServletRequest;
@@ -23,7 +24,10 @@ public class McpController {
     private MessageStorageService messageStorageService;
 
     @Autowired
-    private SimpMessagingTemplate messagingTemplate;
+    private ChatBroadcaster broadcaster;
+
+    @Autowired
+    private ConditionalResponses conditionalResponses;
 
     @Value("${mcp.auth.enabled:true}")
     private boolean authEnabled;
@@ -81,61 +85,147 @@ public class McpController {
         ResponseEntity<Map<String, Object>> auth = authorizeOrUnauthorized(request);
         if (auth != null) return auth;
 
-        Map<String, Object> stats = new HashMap<>();
-        stats.put("totalMessages", messageStorageService.getMessageCount());
-        stats.put("retentionDays", messageStorageService.getMessageRetentionDays());
-        return ResponseEntity.ok(stats);
+        return conditionalResponses.respond(request, () -> {
+            Map<String, Object> stats = new HashMap<>();
+            stats.put("totalMessages", messageStorageService.getMessageCount());
+            stats.put("retentionDays", messageStorageService.getMessageRetentionDays());
+            stats.put("rooms", messageStorageService.getRooms().size());
+            return stats;
+        });
+    }
+
+    // --- Rooms and their message counts ---
+    @GetMapping("/rooms")
+    public ResponseEntity<?> rooms(HttpServletRequest request) {
+        ResponseEntity<Map<String, Object>> auth = authorizeOrUnauthorized(request);
+        if (auth != null) return auth;
+
+        return conditionalResponses.respond(request, messageStorageService::getRooms);
     }
 
     // --- Get all messages with optional pagination ---
-    @GetMapping("/messages")
+    // Offset paging via page/size; keyset paging via before/after/limit (ids or timestamps), which wins if present.
+    // sender and from/to (ids or timestamps, from <= ts < to) filter via the sender index and imply keyset paging.
+    // /messages is the default room
+    @GetMapping({"/messages", "/rooms/{room}/messages"})
     public ResponseEntity<?> getAllMessages(
             HttpServletRequest request,
+            @PathVariable(name = "room", required = false) String room,
             @RequestParam(name = "page", required = false, defaultValue = "0") int page,
-            @RequestParam(name = "size", required = false, defaultValue = "100") int size
+            @RequestParam(name = "size", required = false, defaultValue = "100") int size,
+            @RequestParam(name = "before", required = false) String before,
+            @RequestParam(name = "after", required = false) String after,
+            @RequestParam(name = "limit", required = false) Integer limit,
+            @RequestParam(name = "includeSystem", required = false, defaultValue = "true") boolean includeSystem,
+            @RequestParam(name = "sender", required = false) String sender,
+            @RequestParam(name = "from", required = false) String from,
+            @RequestParam(name = "to", required = false) String to
     ) {
         ResponseEntity<Map<String, Object>> auth = authorizeOrUnauthorized(request);
         if (auth != null) return auth;
 
+        String roomId = room != null ? room : ChatMessage.DEFAULT_ROOM;
+        if (!ChatMessage.isValidRoom(roomId)) {
+            return badRequest("Invalid room: " + roomId);
+        }
+
+        String senderFilter = sender != null && !sender.isBlank() ? sender : null;
+        if (before != null || after != null || limit != null || senderFilter != null || from != null || to != null) {
+            int capped = limit != null ? limit : 100;
+            if (capped <= 0 || capped > 1000) {
+                return badRequest("Invalid limit");
+            }
+            try {
+                return conditionalResponses.respond(request, () -> {
+                    MessageKey afterKey = MessageKey.later(messageStorageService.resolveCursor(roomId, after),
+                            messageStorageService.resolveCursor(roomId, from));
+                    MessageKey beforeKey = MessageKey.earlier(messageStorageService.resolveCursor(roomId, before),
+                            messageStorageService.resolveCursor(roomId, to));
+                    return messageStorageService.getMessagePage(roomId, senderFilter, afterKey, beforeKey, capped, includeSystem);
+                });
+            } catch (IllegalArgumentException e) {
+                return badRequest(e.getMessage());
+            }
+        }
+
         if (page < 0 || size <= 0 || size > 1000) {
             return badRequest("Invalid page/size");
         }
 
-        List<ChatMessage> all = messageStorageService.getAllMessages();
-        int from = Math.min(page * size, Math.max(all.size() - 1, 0));
-        int to = Math.min(from + size, all.size());
-        List<ChatMessage> slice = from <= to ? all.subList(from, to) : Collections.emptyList();
-        Map<String, Object> result = new HashMap<>();
-        result.put("page", page);
-        result.put("size", size);
-        result.put("total", all.size());
-        result.put("messages", slice);
-        return ResponseEntity.ok(result);
+        return conditionalResponses.respond(request, () -> {
+            int total = messageStorageService.getMessageCount(roomId);
+            int offset = Math.min(page * size, Math.max(total - 1, 0));
+            List<ChatMessage> slice = messageStorageService.getMessages(roomId, offset, size);
+            Map<String, Object> result = new HashMap<>();
+            result.put("room", roomId);
+            result.put("page", page);
+            result.put("size", size);
+            result.put("total", total);
+            result.put("messages", slice);
+            return result;
+        });
     }
 
     // --- Get recent messages ---
-    @GetMapping("/messages/recent")
+    @GetMapping({"/messages/recent", "/rooms/{room}/messages/recent"})
     public ResponseEntity<?> getRecentMessages(
             HttpServletRequest request,
+            @PathVariable(name = "room", required = false) String room,
             @RequestParam(name = "limit", required = false, defaultValue = "50") int limit
     ) {
         ResponseEntity<Map<String, Object>> auth = authorizeOrUnauthorized(request);
         if (auth != null) return auth;
 
+        String roomId = room != null ? room : ChatMessage.DEFAULT_ROOM;
+        if (!ChatMessage.isValidRoom(roomId)) {
+            return badRequest("Invalid room: " + roomId);
+        }
         int capped = Math.max(1, Math.min(limit, 200));
-        List<ChatMessage> recent = messageStorageService.getRecentMessages(capped);
-        return ResponseEntity.ok(recent);
+        return conditionalResponses.respond(request, () -> messageStorageService.getRecentMessages(roomId, capped, true));
+    }
+
+    // --- Full-text search: every word of q must match content or sender; ranked, paged by offset/limit ---
+    @GetMapping({"/messages/search", "/rooms/{room}/messages/search"})
+    public ResponseEntity<?> searchMessages(
+            HttpServletRequest request,
+            @PathVariable(name = "room", required = false) String room,
+            @RequestParam(name = "q") String query,
+            @RequestParam(name = "offset", required = false, defaultValue = "0") int offset,
+            @RequestParam(name = "limit", required = false, defaultValue = "20") int limit
+    ) {
+        ResponseEntity<Map<String, Object>> auth = authorizeOrUnauthorized(request);
+        if (auth != null) return auth;
+
+        String roomId = room != null ? room : ChatMessage.DEFAULT_ROOM;
+        if (!ChatMessage.isValidRoom(roomId)) {
+            return badRequest("Invalid room: " + roomId);
+        }
+        if (offset < 0 || limit <= 0 || limit > 100) {
+            return badRequest("Invalid offset/limit");
+        }
+        try {
+            return conditionalResponses.respond(request, () -> messageStorageService.search(roomId, query, offset, limit));
+        } catch (IllegalStateException e) {
+            return badRequest(e.getMessage());
+        }
     }
 
     // --- Post a message and broadcast ---
-    @PostMapping("/messages")
+    // The room comes from the path, else an optional "room" field, else the default room
+    @PostMapping({"/messages", "/rooms/{room}/messages"})
     public ResponseEntity<?> postMessage(
             HttpServletRequest request,
+            @PathVariable(name = "room", required = false) String room,
             @RequestBody Map<String, Object> body
     ) {
         ResponseEntity<Map<String, Object>> auth = authorizeOrUnauthorized(request);
         if (auth != null) return auth;
 
+        String roomId = room != null ? room
+                : body.get("room") != null ? String.valueOf(body.get("room")).trim() : ChatMessage.DEFAULT_ROOM;
+        if (!ChatMessage.isValidRoom(roomId)) {
+            return badRequest("Invalid room: " + roomId);
+        }
         String sender = body.get("sender") != null ? String.valueOf(body.get("sender")).trim() : null;
         String content = body.get("content") != null ? String.valueOf(body.get("content")) : null;
         String typeStr = body.get("type") != null ? String.valueOf(body.get("type")) : "CHAT";
@@ -158,13 +248,17 @@ public class McpController {
         msg.setSender(sender);
         msg.setContent(content);
         msg.setType(type);
+        msg.setRoom(roomId);
         if (msg.getTimestamp() == null) {
             msg.setTimestamp(LocalDateTime.now());
         }
 
-        messageStorageService.saveMessage(msg);
-        // WS broadcast so connected clients receive it
-        messagingTemplate.convertAndSend("/topic/public", msg);
+        // Save and WS broadcast so connected clients (on every node) receive it
+        try {
+            broadcaster.publish(msg, ChatBroadcaster.SOURCE_MCP);
+        } catch (IllegalArgumentException e) {
+            return badRequest(e.getMessage());
+        }
 
         return ResponseEntity.ok(msg);
     }
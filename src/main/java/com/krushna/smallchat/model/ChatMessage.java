@@ -4,12 +4,18 @@ import com.fasterxml.jackson.annotation.JsonFormat;
 
 import java.time.LocalDateTime;
 import java.util.UUID;
+import java.util.regex.Pattern;
 
 public class ChatMessage {
+    // Room of messages sent without one; broadcast on /topic/public, every other room on /topic/room.{id}
+    public static final String DEFAULT_ROOM = "public";
+    private static final Pattern ROOM_ID = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+
     private String id;
     private String sender;
     private String content;
     private MessageType type;
+    private String room = DEFAULT_ROOM;
     
     @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss")
     private LocalDateTime timestamp;
@@ -32,6 +38,15 @@ public class ChatMessage {
         this.type = type;
     }
 
+    // Full state, without generating an id or reading the clock; for rebuilding stored messages
+    public ChatMessage(String id, String sender, String content, MessageType type, LocalDateTime timestamp) {
+        this.id = id;
+        this.sender = sender;
+        this.content = content;
+        this.type = type;
+        this.timestamp = timestamp;
+    }
+
     // Getters and Setters
     public String getId() {
         return id;
@@ -65,6 +80,22 @@ public class ChatMessage {
         this.type = type;
     }
 
+    public String getRoom() {
+        return room;
+    }
+
+    // Blank means the default room
+    public void setRoom(String room) {
+        this.room = room == null || room.isBlank() ? DEFAULT_ROOM : room.trim();
+    }
+
+    /**
+     * Room ids are 1-64 letters, digits, '-' or '_', so they can be used as-is in destinations and URLs.
+     */
+    public static boolean isValidRoom(String room) {
+        return room != null && ROOM_ID.matcher(room).matches();
+    }
+
     public LocalDateTime getTimestamp() {
         return timestamp;
     }
@@ -80,6 +111,7 @@ public class ChatMessage {
                 ", sender='" + sender + '\'' +
                 ", content='" + content + '\'' +
                 ", type=" + type +
+                ", room='" + room + '\'' +
                 ", timestamp=" + timestamp +
                 '}';
     }
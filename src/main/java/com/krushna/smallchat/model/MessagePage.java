@@ -0,0 +1,31 @@
+package com.krushna.smallchat.model;
+
+import java.util.List;
+
+/**
+ * One window of history, always oldest first. {@code nextCursor} is the id to pass back
+ * (as {@code before} or {@code after}, matching the request) to continue in the same direction.
+ */
+public class MessagePage {
+    private final List<ChatMessage> messages;
+    private final String nextCursor;
+    private final boolean hasMore;
+
+    public MessagePage(List<ChatMessage> messages, String nextCursor) {
+        this.messages = messages;
+        this.nextCursor = nextCursor;
+        this.hasMore = nextCursor != null;
+    }
+
+    public List<ChatMessage> getMessages() {
+        return messages;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public boolean isHasMore() {
+        return hasMore;
+    }
+}
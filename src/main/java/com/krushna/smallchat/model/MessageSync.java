@@ -0,0 +1,36 @@
+package com.krushna.smallchat.model;
+
+import java.util.List;
+
+/**
+ * Messages a client missed since the last one it saw, oldest first. {@code cursor} is the id to send as
+ * {@code since} next time. When {@code tooFarBehind} is set no messages are returned: the gap is larger than one
+ * sync covers, or the client's last message is no longer held, and it should reload history page by page instead.
+ */
+public class MessageSync {
+    private final List<ChatMessage> messages;
+    private final String cursor;
+    private final boolean tooFarBehind;
+
+    public MessageSync(List<ChatMessage> messages, String cursor, boolean tooFarBehind) {
+        this.messages = messages;
+        this.cursor = cursor;
+        this.tooFarBehind = tooFarBehind;
+    }
+
+    public static MessageSync tooFarBehind() {
+        return new MessageSync(List.of(), null, true);
+    }
+
+    public List<ChatMessage> getMessages() {
+        return messages;
+    }
+
+    public String getCursor() {
+        return cursor;
+    }
+
+    public boolean isTooFarBehind() {
+        return tooFarBehind;
+    }
+}
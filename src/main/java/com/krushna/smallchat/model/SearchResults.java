@@ -0,0 +1,41 @@
+package com.krushna.smallchat.model;
+
+import java.util.List;
+
+/**
+ * One page of search hits, best first. {@code total} counts the ranked matches, which are the newest
+ * {@code smallchat.search.max-candidates} at most; pass {@code offset + messages.size()} as the next offset.
+ */
+public class SearchResults {
+    private final String query;
+    private final List<ChatMessage> messages;
+    private final int offset;
+    private final int total;
+
+    public SearchResults(String query, List<ChatMessage> messages, int offset, int total) {
+        this.query = query;
+        this.messages = messages;
+        this.offset = offset;
+        this.total = total;
+    }
+
+    public String getQuery() {
+        return query;
+    }
+
+    public List<ChatMessage> getMessages() {
+        return messages;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public boolean isHasMore() {
+        return offset + messages.size() < total;
+    }
+}
@@ -0,0 +1,31 @@
+package com.krushna.smallchat.monitoring;
+
+import com.krushna.smallchat.service.MessageStorageService;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+/**
+ * Exposes background hydration as the "hydration" health contributor. It is OUT_OF_SERVICE until the newest
+ * window of history is in memory and is part of the readiness group, so /actuator/health/readiness tracks it.
+ */
+@Component
+public class HydrationHealthIndicator implements HealthIndicator {
+
+    private final MessageStorageService messageStorageService;
+
+    public HydrationHealthIndicator(MessageStorageService messageStorageService) {
+        this.messageStorageService = messageStorageService;
+    }
+
+    @Override
+    public Health health() {
+        Health.Builder builder = messageStorageService.isHistoryReady() ? Health.up() : Health.outOfService();
+        builder.withDetail("state", messageStorageService.getHydrationState())
+                .withDetail("loaded", messageStorageService.getHydratedCount());
+        if (messageStorageService.getHydratedFrom() != null) {
+            builder.withDetail("coveredFrom", messageStorageService.getHydratedFrom().toString());
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,120 @@
+package com.krushna.smallchat.monitoring;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+import org.springframework.web.socket.handler.WebSocketHandlerDecoratorFactory;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+
+import java.io.IOException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Meters for STOMP message delivery: channel executor queue depth, active and rejected tasks,
+ * open sessions, and sessions evicted for falling behind their send limits.
+ */
+@Component
+public class WebSocketMetrics {
+
+    private static final Logger log = LoggerFactory.getLogger(WebSocketMetrics.class);
+
+    private final MeterRegistry registry;
+    private final AtomicInteger openSessions = new AtomicInteger();
+    private final Counter evictedSessions;
+
+    public WebSocketMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        Gauge.builder("smallchat.websocket.sessions", openSessions, AtomicInteger::get)
+                .description("Open WebSocket/SockJS sessions")
+                .register(registry);
+        this.evictedSessions = Counter.builder("smallchat.websocket.sessions.evicted")
+                .description("Sessions closed for exceeding the send buffer or send time limit")
+                .register(registry);
+    }
+
+    /**
+     * Publishes queue depth and activity for a client channel executor.
+     */
+    public void bindExecutor(String channel, ThreadPoolTaskExecutor executor) {
+        Gauge.builder("smallchat.websocket.executor.queue", executor, WebSocketMetrics::queueSize)
+                .description("Tasks waiting in the channel executor queue")
+                .tag("channel", channel)
+                .register(registry);
+        Gauge.builder("smallchat.websocket.executor.active", executor, ThreadPoolTaskExecutor::getActiveCount)
+                .description("Channel executor threads running a task")
+                .tag("channel", channel)
+                .register(registry);
+    }
+
+    /**
+     * Rejects like the default abort policy, after counting the rejection.
+     */
+    public RejectedExecutionHandler rejectionHandler(String channel) {
+        Counter rejected = Counter.builder("smallchat.websocket.executor.rejected")
+                .description("Messages dropped because the channel executor queue was full")
+                .tag("channel", channel)
+                .register(registry);
+        return (task, pool) -> {
+            rejected.increment();
+            throw new RejectedExecutionException("smallchat " + channel + " channel queue full (" + pool.getQueue().size() + ")");
+        };
+    }
+
+    /**
+     * Tracks session lifecycles. When sends to a session exceed the buffer or time limit, Spring closes it with
+     * SESSION_NOT_RELIABLE; that close is counted as an eviction as soon as it is requested, since a stalled
+     * client may not complete the close handshake for a while.
+     */
+    public WebSocketHandlerDecoratorFactory sessionTracker() {
+        return handler -> new WebSocketHandlerDecorator(handler) {
+            @Override
+            public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+                openSessions.incrementAndGet();
+                super.afterConnectionEstablished(new EvictionTrackingSession(session));
+            }
+
+            @Override
+            public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws Exception {
+                openSessions.decrementAndGet();
+                super.afterConnectionClosed(session, status);
+            }
+        };
+    }
+
+    private final class EvictionTrackingSession extends WebSocketSessionDecorator {
+        private final AtomicBoolean evicted = new AtomicBoolean();
+
+        EvictionTrackingSession(WebSocketSession delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public void close(CloseStatus status) throws IOException {
+            if (status.getCode() == CloseStatus.SESSION_NOT_RELIABLE.getCode() && evicted.compareAndSet(false, true)) {
+                evictedSessions.increment();
+                log.warn("Evicting slow WebSocket session {}", getId());
+            }
+            super.close(status);
+        }
+    }
+
+    private static int queueSize(ThreadPoolTaskExecutor executor) {
+        try {
+            ThreadPoolExecutor pool = executor.getThreadPoolExecutor();
+            return pool.getQueue().size();
+        } catch (IllegalStateException e) {
+            return 0; // not initialized yet
+        }
+    }
+}
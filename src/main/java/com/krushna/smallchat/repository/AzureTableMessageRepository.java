@@ -3,21 +3,40 @@ package com.krushna.smallchat.repository;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Repository;
+import jakarta.annotation.PreDestroy;
 
+import com.azure.core.http.rest.PagedResponse;
 import com.azure.data.tables.TableClient;
 import com.azure.data.tables.TableClientBuilder;
 import com.azure.data.tables.models.ListEntitiesOptions;
 import com.azure.data.tables.models.TableEntity;
 import com.azure.data.tables.models.TableServiceException;
+import com.azure.data.tables.models.TableTransactionAction;
+import com.azure.data.tables.models.TableTransactionActionType;
+import com.krushna.smallchat.config.VirtualThreads;
 import com.krushna.smallchat.model.ChatMessage;
 
 @Repository
@@ -25,29 +44,63 @@ public class AzureTableMessageRepository implements MessageRepository {
 
     private static final Logger log = LoggerFactory.getLogger(AzureTableMessageRepository.class);
 
+    /**
+     * How rows are spread over partitions. SINGLE keeps everything in the configured partition (the original
+     * layout); DAILY/HOURLY write to {@code <partition>-dyyyyMMdd} / {@code <partition>-hyyyyMMddHH} buckets.
+     * Reads and retention always cover the single partition too, so switching layout keeps old rows visible.
+     */
+    public enum PartitionLayout { SINGLE, DAILY, HOURLY }
+
     private final String partitionKey;
+    private final PartitionLayout layout;
     private final boolean enabled;
     private final TableClient tableClient;
+    private final int deleteParallelism;
+    private final ExecutorService deleteExecutor;
+    private final ExecutorService queryExecutor;
+    private final Semaphore queryPermits;
+
+    // Service limit for a single entity-group transaction
+    static final int MAX_TRANSACTION_ACTIONS = 100;
+
+    // Largest page the service returns per request
+    private static final int STREAM_PAGE_SIZE = 1000;
+
+    private static final List<String> KEY_COLUMNS = List.of("PartitionKey", "RowKey");
 
     private static final DateTimeFormatter ISO = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").withLocale(Locale.ROOT);
+    private static final DateTimeFormatter DAY_BUCKET = DateTimeFormatter.ofPattern("yyyyMMdd").withLocale(Locale.ROOT);
+    private static final DateTimeFormatter HOUR_BUCKET = DateTimeFormatter.ofPattern("yyyyMMddHH").withLocale(Locale.ROOT);
 
     public AzureTableMessageRepository(
             @Value("${smallchat.azure.table.connection-string:}") String connectionString,
             @Value("${smallchat.azure.table.name:SmallChatMessages}") String tableName,
-            @Value("${smallchat.azure.table.partition:default}") String partitionKey
+            @Value("${smallchat.azure.table.partition:default}") String partitionKey,
+            @Value("${smallchat.azure.table.partition-layout:single}") String partitionLayout,
+            @Value("${smallchat.azure.table.delete-parallelism:4}") int deleteParallelism,
+            @Value("${smallchat.azure.table.query-parallelism:8}") int queryParallelism,
+            @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads
     ) {
         this.partitionKey = partitionKey;
+        this.layout = PartitionLayout.valueOf(partitionLayout.trim().toUpperCase(Locale.ROOT));
+        this.deleteParallelism = Math.max(1, deleteParallelism);
+        this.queryPermits = new Semaphore(Math.max(1, queryParallelism));
         if (connectionString == null || connectionString.isBlank()) {
             this.enabled = false;
             this.tableClient = null;
+            this.deleteExecutor = null;
+            this.queryExecutor = null;
             log.info("Azure Table Storage disabled: no connection string provided");
         } else {
             this.tableClient = new TableClientBuilder()
                     .connectionString(connectionString)
                     .tableName(tableName)
                     .buildClient();
+            // Blocking SDK calls; with virtual threads the parallelism settings are enforced by permits instead of pool size
+            this.deleteExecutor = VirtualThreads.executor("azure-table-delete-", this.deleteParallelism, virtualThreads);
+            this.queryExecutor = VirtualThreads.executor("azure-table-query-", queryParallelism, virtualThreads);
             this.enabled = true;
-            log.info("Azure Table Storage enabled. Table: {} Partition: {}", tableName, partitionKey);
+            log.info("Azure Table Storage enabled. Table: {} Partition: {} Layout: {}", tableName, partitionKey, layout);
         }
     }
 
@@ -58,13 +111,155 @@ public class AzureTableMessageRepository implements MessageRepository {
         tableClient.upsertEntity(entity);
     }
 
+    /**
+     * Writes the batch as entity-group transactions: grouped by PartitionKey, at most
+     * {@value #MAX_TRANSACTION_ACTIONS} upserts per round trip. A chunk the service rejects as a bad request is
+     * retried entity by entity so one bad row cannot take its neighbours down with it. Throttling, timeouts and
+     * server errors are rethrown as they are, and rows that still fail are reported by throwing once every chunk has
+     * been tried, so the caller can retry the batch.
+     */
+    @Override
+    public void saveAll(List<ChatMessage> messages) throws Exception {
+        if (!enabled || messages.isEmpty()) return;
+        // A transaction may not touch the same entity twice, so the last write per row wins
+        Map<String, Map<String, TableEntity>> byPartition = new LinkedHashMap<>();
+        for (ChatMessage m : messages) {
+            TableEntity e = toEntity(m);
+            byPartition.computeIfAbsent(e.getPartitionKey(), k -> new LinkedHashMap<>()).put(e.getRowKey(), e);
+        }
+        int failed = 0;
+        TableServiceException lastFailure = null;
+        for (Map<String, TableEntity> rows : byPartition.values()) {
+            List<TableEntity> entities = new ArrayList<>(rows.values());
+            for (int from = 0; from < entities.size(); from += MAX_TRANSACTION_ACTIONS) {
+                List<TableEntity> chunk = entities.subList(from, Math.min(from + MAX_TRANSACTION_ACTIONS, entities.size()));
+                List<TableTransactionAction> actions = new ArrayList<>(chunk.size());
+                for (TableEntity e : chunk) {
+                    actions.add(new TableTransactionAction(TableTransactionActionType.UPSERT_MERGE, e));
+                }
+                try {
+                    tableClient.submitTransaction(actions);
+                } catch (TableServiceException ex) {
+                    // Splitting a throttled chunk into single upserts only adds load while the service pushes back
+                    if (isTransient(ex)) throw ex;
+                    log.warn("Batch upsert of {} entities failed ({}), retrying individually", chunk.size(), ex.getMessage());
+                    for (TableEntity e : chunk) {
+                        try {
+                            tableClient.upsertEntity(e);
+                        } catch (TableServiceException single) {
+                            if (isTransient(single)) throw single;
+                            log.warn("Failed persisting entity {}: {}", e.getRowKey(), single.getMessage());
+                            failed++;
+                            lastFailure = single;
+                        }
+                    }
+                }
+            }
+        }
+        if (failed > 0) {
+            throw new IllegalStateException(failed + " of " + messages.size() + " entities failed to persist", lastFailure);
+        }
+    }
+
+    // No response, a timeout, throttling or a server error: worth retrying the whole batch later
+    private static boolean isTransient(TableServiceException ex) {
+        if (ex.getResponse() == null) return true;
+        int status = ex.getResponse().getStatusCode();
+        return status == 408 || status == 429 || status >= 500;
+    }
+
+    /**
+     * Loads everything stamped at or after {@code since}. With a bucketed layout each bucket in the window is a
+     * separate partition query, and they run concurrently on the query pool alongside the legacy partition.
+     */
     @Override
     public List<ChatMessage> loadSince(LocalDateTime since) throws Exception {
+        return loadBetween(since, null);
+    }
+
+    /**
+     * Same as {@link #loadSince}, with the RowKey range also closed at {@code until} and only the buckets it reaches.
+     */
+    @Override
+    public List<ChatMessage> loadBetween(LocalDateTime since, LocalDateTime until) throws Exception {
         List<ChatMessage> list = new ArrayList<>();
         if (!enabled) return list;
         long cutoff = toEpochMillisUtc(since);
-        // Append 'L' to indicate Int64 in OData filter
-        String filter = String.format("PartitionKey eq '%s' and tsEpoch ge %dL", partitionKey, cutoff);
+        // RowKey is epoch-prefixed, so a RowKey range is the indexed form of "since <= tsEpoch < until"
+        String range = until == null
+                ? String.format("RowKey ge '%013d'", cutoff)
+                : String.format("RowKey ge '%013d' and RowKey lt '%013d'", cutoff, toEpochMillisUtc(until));
+        List<String> filters = new ArrayList<>();
+        filters.add(String.format("PartitionKey eq '%s' and %s", partitionKey, range));
+        if (layout != PartitionLayout.SINGLE) {
+            LocalDateTime first = bucketStart(since != null ? since : LocalDateTime.now());
+            // One bucket of slack for clock skew between nodes
+            LocalDateTime last = until != null ? bucketStart(until) : nextBucket(bucketStart(LocalDateTime.now()));
+            for (LocalDateTime b = first; !b.isAfter(last); b = nextBucket(b)) {
+                String pk = partitionFor(b);
+                filters.add(b.equals(first) || b.equals(last)
+                        ? String.format("PartitionKey eq '%s' and %s", pk, range)
+                        : String.format("PartitionKey eq '%s'", pk));
+            }
+        }
+        List<Callable<List<ChatMessage>>> queries = new ArrayList<>(filters.size());
+        for (String filter : filters) {
+            queries.add(() -> {
+                queryPermits.acquire();
+                try {
+                    return query(filter);
+                } finally {
+                    queryPermits.release();
+                }
+            });
+        }
+        for (Future<List<ChatMessage>> f : queryExecutor.invokeAll(queries)) {
+            try {
+                list.addAll(f.get());
+            } catch (ExecutionException ex) {
+                throw ex.getCause() instanceof Exception ? (Exception) ex.getCause() : ex;
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Walks the window back one hour at a time, newest hour first, as RowKey range queries against the legacy
+     * partition and (for bucketed layouts) the bucket holding that hour. Each query is handed over page by page.
+     */
+    @Override
+    public void streamSince(LocalDateTime since, HistorySink sink) throws Exception {
+        if (!enabled) return;
+        LocalDateTime from = since != null ? since : LocalDateTime.now();
+        LocalDateTime sliceEnd = LocalDateTime.now().truncatedTo(ChronoUnit.HOURS).plusHours(2);
+        while (sliceEnd.isAfter(from)) {
+            LocalDateTime sliceStart = sliceEnd.minusHours(1);
+            if (sliceStart.isBefore(from)) sliceStart = from;
+            String range = String.format("RowKey ge '%013d' and RowKey lt '%013d'",
+                    toEpochMillisUtc(sliceStart), toEpochMillisUtc(sliceEnd));
+            streamPages(String.format("PartitionKey eq '%s' and %s", partitionKey, range), sink);
+            if (layout != PartitionLayout.SINGLE) {
+                streamPages(String.format("PartitionKey eq '%s' and %s", partitionFor(sliceStart), range), sink);
+            }
+            sink.covered(sliceStart);
+            sliceEnd = sliceStart;
+        }
+    }
+
+    private void streamPages(String filter, HistorySink sink) {
+        ListEntitiesOptions options = new ListEntitiesOptions().setFilter(filter).setTop(STREAM_PAGE_SIZE);
+        for (PagedResponse<TableEntity> page : tableClient.listEntities(options, null, null).iterableByPage()) {
+            List<ChatMessage> messages = new ArrayList<>(page.getValue().size());
+            for (TableEntity e : page.getValue()) {
+                ChatMessage msg = fromEntity(e);
+                if (msg != null) messages.add(msg);
+            }
+            if (!messages.isEmpty()) sink.page(messages);
+        }
+    }
+
+    private List<ChatMessage> query(String filter) {
+        List<ChatMessage> list = new ArrayList<>();
         for (TableEntity e : tableClient.listEntities(new ListEntitiesOptions().setFilter(filter), null, null)) {
             ChatMessage msg = fromEntity(e);
             if (msg != null) list.add(msg);
@@ -72,22 +267,117 @@ public class AzureTableMessageRepository implements MessageRepository {
         return list;
     }
 
+    /**
+     * Retention delete. Scans only PartitionKey/RowKey for rows whose RowKey (epoch-prefixed) sorts before the
+     * cutoff, and deletes them in {@value #MAX_TRANSACTION_ACTIONS}-row transactions with at most
+     * {@code delete-parallelism} batches in flight. Because it is a key-range scan, a run that is interrupted or
+     * leaves failures behind is simply picked up by the next run from the first remaining row.
+     */
     @Override
     public int deleteBefore(LocalDateTime cutoffTime) throws Exception {
         if (!enabled) return 0;
-        int deleted = 0;
+        long started = System.nanoTime();
         long cutoff = toEpochMillisUtc(cutoffTime);
-        // Append 'L' to indicate Int64 in OData filter
-        String filter = String.format("PartitionKey eq '%s' and tsEpoch lt %dL", partitionKey, cutoff);
-        for (TableEntity e : tableClient.listEntities(new ListEntitiesOptions().setFilter(filter), null, null)) {
+        DeleteStats stats = new DeleteStats();
+        deleteMatching(String.format("PartitionKey eq '%s' and RowKey lt '%013d'", partitionKey, cutoff), stats);
+        if (layout != PartitionLayout.SINGLE) {
+            // Buckets wholly before the cutoff go without a RowKey predicate, oldest first, skipping empty ones
+            String cutoffBucket = partitionFor(bucketStart(cutoffTime));
+            Set<String> attempted = new HashSet<>();
+            String bucket;
+            while ((bucket = oldestBucketBefore(cutoffBucket)) != null && attempted.add(bucket)) {
+                deleteMatching(String.format("PartitionKey eq '%s'", bucket), stats);
+            }
+            deleteMatching(String.format("PartitionKey eq '%s' and RowKey lt '%013d'", cutoffBucket, cutoff), stats);
+        }
+        long elapsedMs = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        int deleted = stats.deleted.get();
+        if (deleted > 0 || stats.failed.get() > 0) {
+            log.info("Retention delete removed {} entities in {} ms ({} entities/s), {} failed",
+                    deleted, elapsedMs, deleted * 1000L / elapsedMs, stats.failed.get());
+        }
+        return deleted;
+    }
+
+    // PartitionKeys sort by bucket time, so the first key in the prefix range is the oldest remaining bucket
+    private String oldestBucketBefore(String bucketExclusive) {
+        String prefix = layout == PartitionLayout.DAILY ? partitionKey + "-d" : partitionKey + "-h";
+        String filter = String.format("PartitionKey ge '%s' and PartitionKey lt '%s'", prefix, bucketExclusive);
+        ListEntitiesOptions options = new ListEntitiesOptions().setFilter(filter).setSelect(KEY_COLUMNS).setTop(1);
+        Iterator<TableEntity> it = tableClient.listEntities(options, null, null).iterator();
+        return it.hasNext() ? it.next().getPartitionKey() : null;
+    }
+
+    private static final class DeleteStats {
+        final AtomicInteger deleted = new AtomicInteger();
+        final AtomicInteger failed = new AtomicInteger();
+    }
+
+    private void deleteMatching(String filter, DeleteStats stats) throws InterruptedException {
+        ListEntitiesOptions options = new ListEntitiesOptions().setFilter(filter).setSelect(KEY_COLUMNS);
+        Semaphore inFlight = new Semaphore(deleteParallelism);
+        List<TableEntity> chunk = new ArrayList<>(MAX_TRANSACTION_ACTIONS);
+        try {
+            for (TableEntity e : tableClient.listEntities(options, null, null)) {
+                chunk.add(e);
+                if (chunk.size() == MAX_TRANSACTION_ACTIONS) {
+                    submitDeleteBatch(chunk, inFlight, stats);
+                    chunk = new ArrayList<>(MAX_TRANSACTION_ACTIONS);
+                }
+            }
+            if (!chunk.isEmpty()) {
+                submitDeleteBatch(chunk, inFlight, stats);
+            }
+        } finally {
+            // Wait for every batch still in flight
+            inFlight.acquire(deleteParallelism);
+            inFlight.release(deleteParallelism);
+        }
+    }
+
+    private void submitDeleteBatch(List<TableEntity> rows, Semaphore inFlight, DeleteStats stats) throws InterruptedException {
+        inFlight.acquire();
+        try {
+            deleteExecutor.execute(() -> {
+                try {
+                    deleteBatch(rows, stats);
+                } finally {
+                    inFlight.release();
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            inFlight.release();
+            throw ex;
+        }
+    }
+
+    private void deleteBatch(List<TableEntity> rows, DeleteStats stats) {
+        List<TableTransactionAction> actions = new ArrayList<>(rows.size());
+        for (TableEntity e : rows) {
+            actions.add(new TableTransactionAction(TableTransactionActionType.DELETE, e));
+        }
+        try {
+            tableClient.submitTransaction(actions);
+            stats.deleted.addAndGet(rows.size());
+            return;
+        } catch (TableServiceException ex) {
+            // Usually a row already removed by another node; fall back to row-by-row
+            log.debug("Batch delete of {} entities failed ({}), retrying individually", rows.size(), ex.getMessage());
+        } catch (RuntimeException ex) {
+            log.warn("Batch delete of {} entities failed: {}", rows.size(), ex.getMessage());
+            stats.failed.addAndGet(rows.size());
+            return;
+        }
+        for (TableEntity e : rows) {
             try {
                 tableClient.deleteEntity(Objects.toString(e.getPartitionKey()), Objects.toString(e.getRowKey()));
-                deleted++;
+                stats.deleted.incrementAndGet();
             } catch (TableServiceException ex) {
+                if (ex.getResponse() != null && ex.getResponse().getStatusCode() == 404) continue;
+                stats.failed.incrementAndGet();
                 log.warn("Failed deleting entity {}: {}", e.getRowKey(), ex.getMessage());
             }
         }
-        return deleted;
     }
 
     @Override
@@ -95,20 +385,45 @@ public class AzureTableMessageRepository implements MessageRepository {
         return enabled;
     }
 
-    private TableEntity toEntity(ChatMessage m) {
-        long epoch = toEpochMillisUtc(m.getTimestamp());
+    @PreDestroy
+    public void shutdown() {
+        if (!enabled) return;
+        stop(deleteExecutor, "delete");
+        stop(queryExecutor, "query");
+    }
+
+    // Lets running calls finish for a few seconds, then interrupts them so no worker outlives the context
+    private static void stop(ExecutorService executor, String name) {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                log.warn("Azure Table {} workers still busy at shutdown; interrupting", name);
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Package-private for EntityMappingBenchmark
+    TableEntity toEntity(ChatMessage m) {
+        LocalDateTime ts = m.getTimestamp() != null ? m.getTimestamp() : LocalDateTime.now();
+        long epoch = toEpochMillisUtc(ts);
         String rowKey = String.format("%013d_%s", epoch, m.getId());
-        TableEntity e = new TableEntity(partitionKey, rowKey);
+        TableEntity e = new TableEntity(partitionFor(ts), rowKey);
         e.addProperty("id", m.getId());
         e.addProperty("sender", m.getSender());
         e.addProperty("content", m.getContent());
         e.addProperty("type", m.getType() != null ? m.getType().name() : null);
         e.addProperty("timestampIso", m.getTimestamp() != null ? m.getTimestamp().format(ISO) : null);
         e.addProperty("tsEpoch", epoch);
+        // Rows without a room predate rooms and belong to the default one
+        if (!ChatMessage.DEFAULT_ROOM.equals(m.getRoom())) e.addProperty("room", m.getRoom());
         return e;
     }
 
-    private ChatMessage fromEntity(TableEntity e) {
+    ChatMessage fromEntity(TableEntity e) {
         try {
             ChatMessage m = new ChatMessage();
             Object id = e.getProperty("id");
@@ -119,6 +434,8 @@ public class AzureTableMessageRepository implements MessageRepository {
             if (content != null) m.setContent(content.toString());
             Object type = e.getProperty("type");
             if (type != null) m.setType(ChatMessage.MessageType.valueOf(type.toString()));
+            Object room = e.getProperty("room");
+            if (room != null) m.setRoom(room.toString());
             Object tsIso = e.getProperty("timestampIso");
             if (tsIso != null) {
                 m.setTimestamp(LocalDateTime.parse(tsIso.toString(), ISO));
@@ -135,6 +452,25 @@ public class AzureTableMessageRepository implements MessageRepository {
         }
     }
 
+    private String partitionFor(LocalDateTime ts) {
+        switch (layout) {
+            case DAILY:
+                return partitionKey + "-d" + ts.format(DAY_BUCKET);
+            case HOURLY:
+                return partitionKey + "-h" + ts.format(HOUR_BUCKET);
+            default:
+                return partitionKey;
+        }
+    }
+
+    private LocalDateTime bucketStart(LocalDateTime ts) {
+        return ts.truncatedTo(layout == PartitionLayout.HOURLY ? ChronoUnit.HOURS : ChronoUnit.DAYS);
+    }
+
+    private LocalDateTime nextBucket(LocalDateTime bucketStart) {
+        return layout == PartitionLayout.HOURLY ? bucketStart.plusHours(1) : bucketStart.plusDays(1);
+    }
+
     private static long toEpochMillisUtc(LocalDateTime ldt) {
         if (ldt == null) ldt = LocalDateTime.now();
         return ldt.toInstant(ZoneOffset.UTC).toEpochMilli();
@@ -0,0 +1,18 @@
+package com.krushna.smallchat.repository;
+
+import com.krushna.smallchat.model.ChatMessage;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Receives history from {@link MessageRepository#streamSince} as it is read.
+ */
+public interface HistorySink {
+
+    void page(List<ChatMessage> messages);
+
+    // Everything stamped at or after {@code from} has now been delivered
+    default void covered(LocalDateTime from) {
+    }
+}
@@ -0,0 +1,118 @@
+package com.krushna.smallchat.repository;
+
+import com.krushna.smallchat.model.ChatMessage;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * Compact binary form of a {@link ChatMessage}, shared by the local log and snapshots.
+ * Layout: epoch second (long, UTC) | nano (int) | type ordinal (byte, -1 = none) | id | sender | content [| room],
+ * strings as int byte-length (-1 = null) followed by UTF-8. The timestamp leads so it can be read without decoding the rest.
+ * The room is only written for messages outside the default room, and a record without it decodes into the default
+ * room, so records from before rooms existed still read. Callers always hand {@link #decode} exactly one record.
+ */
+public final class MessageCodec {
+
+    private MessageCodec() {
+    }
+
+    public static int encodedSize(ChatMessage m) {
+        int size = 8 + 4 + 1 + stringSize(m.getId()) + stringSize(m.getSender()) + stringSize(m.getContent());
+        return hasRoom(m) ? size + stringSize(m.getRoom()) : size;
+    }
+
+    public static byte[] encode(ChatMessage m) {
+        ByteBuffer buf = ByteBuffer.allocate(encodedSize(m));
+        encode(m, buf);
+        return buf.array();
+    }
+
+    public static void encode(ChatMessage m, ByteBuffer out) {
+        LocalDateTime ts = m.getTimestamp() != null ? m.getTimestamp() : LocalDateTime.now();
+        out.putLong(ts.toEpochSecond(ZoneOffset.UTC));
+        out.putInt(ts.getNano());
+        out.put(m.getType() != null ? (byte) m.getType().ordinal() : (byte) -1);
+        putString(out, m.getId());
+        putString(out, m.getSender());
+        putString(out, m.getContent());
+        if (hasRoom(m)) putString(out, m.getRoom());
+    }
+
+    public static ChatMessage decode(ByteBuffer in) {
+        try {
+            ChatMessage m = new ChatMessage();
+            m.setTimestamp(LocalDateTime.ofEpochSecond(in.getLong(), in.getInt(), ZoneOffset.UTC));
+            byte type = in.get();
+            m.setType(type >= 0 ? ChatMessage.MessageType.values()[type] : null);
+            m.setId(getString(in));
+            m.setSender(getString(in));
+            m.setContent(getString(in));
+            if (in.hasRemaining()) m.setRoom(getString(in));
+            return m;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Corrupt message record", e);
+        }
+    }
+
+    /**
+     * Reads just the timestamp (as UTC epoch millis) of the record starting at {@code offset}.
+     */
+    public static long peekEpochMillis(ByteBuffer in, int offset) {
+        return in.getLong(offset) * 1000L + in.getInt(offset + 8) / 1_000_000;
+    }
+
+    public static long toEpochMillis(LocalDateTime ts) {
+        return ts.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    private static boolean hasRoom(ChatMessage m) {
+        return m.getRoom() != null && !ChatMessage.DEFAULT_ROOM.equals(m.getRoom());
+    }
+
+    private static int stringSize(String s) {
+        return 4 + (s == null ? 0 : utf8Length(s));
+    }
+
+    private static void putString(ByteBuffer out, String s) {
+        if (s == null) {
+            out.putInt(-1);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.putInt(bytes.length);
+        out.put(bytes);
+    }
+
+    private static String getString(ByteBuffer in) {
+        int len = in.getInt();
+        if (len < 0) return null;
+        byte[] bytes = new byte[len];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // UTF-8 length without encoding, so sizing a record does not allocate
+    private static int utf8Length(String s) {
+        int len = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                len += 1;
+            } else if (c < 0x800) {
+                len += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                len += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                len += 1; // unpaired surrogate, encoded as '?'
+            } else {
+                len += 3;
+            }
+        }
+        return len;
+    }
+}
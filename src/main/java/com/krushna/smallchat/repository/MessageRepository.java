@@ -7,7 +7,29 @@ import java.util.List;
 
 public interface MessageRepository {
     void save(ChatMessage message) throws Exception;
+
+    // Batch write; backends with a cheaper bulk path should override the one-by-one default
+    default void saveAll(List<ChatMessage> messages) throws Exception {
+        for (ChatMessage m : messages) {
+            save(m);
+        }
+    }
+
     List<ChatMessage> loadSince(LocalDateTime since) throws Exception;
+
+    // Messages stamped at or after since and before until (null for no upper bound), in no particular order
+    default List<ChatMessage> loadBetween(LocalDateTime since, LocalDateTime until) throws Exception {
+        List<ChatMessage> list = loadSince(since);
+        if (until != null) list.removeIf(m -> m.getTimestamp() == null || !m.getTimestamp().isBefore(until));
+        return list;
+    }
+
+    // Streams the same window page by page, newest first where the backend can, so callers can serve early
+    default void streamSince(LocalDateTime since, HistorySink sink) throws Exception {
+        sink.page(loadSince(since));
+        sink.covered(since);
+    }
+
     int deleteBefore(LocalDateTime cutoff) throws Exception;
     boolean isEnabled();
 }
@@ -0,0 +1,397 @@
+package com.krushna.smallchat.repository;
+
+import com.krushna.smallchat.model.ChatMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * MessageRepository on local disk: an append-only log split into size-rolled, memory-mapped segment files.
+ * <p>
+ * Each record is {@code length | crc32c | payload} with the payload in {@link MessageCodec} form. The active segment
+ * is mapped at its full size and written in place; a zero length marks the end, so recovery after a crash is a
+ * scan to the first zero or bad checksum. {@link #saveAll} forces the mapping once per call, which gives group
+ * commit when fed by the write-behind batcher. Sealed segments are truncated, remapped read-only and get a
+ * {@code .idx} file holding their bounds and a sparse time index, used by {@link #loadSince} to seek instead of scan.
+ * Retention drops whole sealed segments.
+ */
+public class SegmentedLogMessageRepository implements MessageRepository, Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(SegmentedLogMessageRepository.class);
+
+    private static final String LOG_SUFFIX = ".log";
+    private static final String INDEX_SUFFIX = ".idx";
+    private static final int INDEX_MAGIC = 0x534D4958; // "SMIX"
+    private static final int RECORD_HEADER = 8;
+    // One sparse index entry per this many bytes of log
+    private static final int INDEX_INTERVAL_BYTES = 64 * 1024;
+    private static final int STREAM_PAGE_SIZE = 1000;
+
+    private final Path dir;
+    private final int segmentBytes;
+    private final List<Segment> segments = new CopyOnWriteArrayList<>();
+    private Segment active; // guarded by this
+    private long nextSeq;
+
+    public SegmentedLogMessageRepository(Path dir, int segmentBytes) throws IOException {
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+        Files.createDirectories(dir);
+        List<Path> logs;
+        try (Stream<Path> files = Files.list(dir)) {
+            logs = files.filter(p -> p.getFileName().toString().endsWith(LOG_SUFFIX)).sorted().toList();
+        }
+        for (Path p : logs) {
+            Segment s = Files.exists(indexPath(p)) ? Segment.openSealed(p) : Segment.recover(p, segmentBytes);
+            segments.add(s);
+            nextSeq = Math.max(nextSeq, s.seq + 1);
+        }
+        // Only the newest segment can still be open; anything before it was rolled and just needs sealing
+        for (Segment s : segments) {
+            if (!s.sealed && s != last()) s.seal();
+        }
+        if (segments.isEmpty() || last().sealed) {
+            roll(0);
+        } else {
+            active = last();
+        }
+        long total = segments.stream().mapToLong(s -> s.count).sum();
+        log.info("Local message log at {}: {} segments, {} records", dir.toAbsolutePath(), segments.size(), total);
+    }
+
+    @Override
+    public void save(ChatMessage message) throws Exception {
+        saveAll(List.of(message));
+    }
+
+    @Override
+    public synchronized void saveAll(List<ChatMessage> messages) throws IOException {
+        for (ChatMessage m : messages) {
+            int size = MessageCodec.encodedSize(m);
+            if (active.remaining() < RECORD_HEADER + size) roll(RECORD_HEADER + size);
+            active.append(m, size);
+        }
+        // Group commit: one fsync for the whole batch
+        active.force();
+    }
+
+    @Override
+    public List<ChatMessage> loadSince(LocalDateTime since) {
+        return loadBetween(since, null);
+    }
+
+    // Segments entirely outside the window are skipped on their bounds
+    @Override
+    public List<ChatMessage> loadBetween(LocalDateTime since, LocalDateTime until) {
+        long sinceMs = since != null ? MessageCodec.toEpochMillis(since) : Long.MIN_VALUE;
+        long untilMs = until != null ? MessageCodec.toEpochMillis(until) : Long.MAX_VALUE;
+        List<ChatMessage> list = new ArrayList<>();
+        for (Segment s : segments) {
+            if (s.count == 0 || s.maxTs < sinceMs || s.minTs >= untilMs) continue;
+            s.scan(sinceMs, untilMs, list::add);
+        }
+        return list;
+    }
+
+    // Newest segment first; within a segment records come in append order
+    @Override
+    public void streamSince(LocalDateTime since, HistorySink sink) {
+        long sinceMs = since != null ? MessageCodec.toEpochMillis(since) : Long.MIN_VALUE;
+        List<Segment> snapshot = new ArrayList<>(segments);
+        for (int i = snapshot.size() - 1; i >= 0; i--) {
+            Segment s = snapshot.get(i);
+            if (s.count > 0 && s.maxTs >= sinceMs) {
+                List<ChatMessage> page = new ArrayList<>(STREAM_PAGE_SIZE);
+                s.scan(sinceMs, Long.MAX_VALUE, m -> {
+                    page.add(m);
+                    if (page.size() >= STREAM_PAGE_SIZE) {
+                        sink.page(new ArrayList<>(page));
+                        page.clear();
+                    }
+                });
+                if (!page.isEmpty()) sink.page(page);
+            }
+            // Everything newer than the newest record left in older segments has now been delivered
+            long olderMax = Long.MIN_VALUE;
+            for (int j = 0; j < i; j++) olderMax = Math.max(olderMax, snapshot.get(j).maxTs);
+            if (olderMax == Long.MIN_VALUE || olderMax < sinceMs) {
+                sink.covered(since);
+                return;
+            }
+            sink.covered(fromEpochMillis(olderMax + 1));
+        }
+        sink.covered(since);
+    }
+
+    @Override
+    public synchronized int deleteBefore(LocalDateTime cutoff) throws IOException {
+        long cutoffMs = MessageCodec.toEpochMillis(cutoff);
+        int deleted = 0;
+        int dropped = 0;
+        for (Segment s : segments) {
+            if (s == active || (s.count > 0 && s.maxTs >= cutoffMs)) continue;
+            segments.remove(s);
+            deleted += s.count;
+            dropped++;
+            Files.deleteIfExists(indexPath(s.path));
+            Files.deleteIfExists(s.path);
+        }
+        if (dropped > 0) {
+            log.info("Dropped {} expired log segments ({} records)", dropped, deleted);
+        }
+        return deleted;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return true;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (active != null) {
+            active.force();
+            active.channel.close();
+        }
+    }
+
+    private Segment last() {
+        return segments.get(segments.size() - 1);
+    }
+
+    private void roll(int minBytes) throws IOException {
+        if (active != null) active.seal();
+        Path p = dir.resolve(String.format("%020d%s", nextSeq, LOG_SUFFIX));
+        // Room for the record plus a zero end marker
+        active = Segment.create(nextSeq++, p, Math.max(segmentBytes, minBytes + 4));
+        segments.add(active);
+    }
+
+    private static Path indexPath(Path logPath) {
+        String name = logPath.getFileName().toString();
+        return logPath.resolveSibling(name.substring(0, name.length() - LOG_SUFFIX.length()) + INDEX_SUFFIX);
+    }
+
+    private static LocalDateTime fromEpochMillis(long ms) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(ms, 1000L), (int) Math.floorMod(ms, 1000L) * 1_000_000, ZoneOffset.UTC);
+    }
+
+    private static final class Segment {
+        final long seq;
+        final Path path;
+        FileChannel channel;        // open while active
+        volatile ByteBuffer buffer; // read-write while active, read-only once sealed
+        volatile int end;
+        volatile int count;
+        volatile long minTs = Long.MAX_VALUE;
+        volatile long maxTs = Long.MIN_VALUE;
+        volatile boolean sealed;
+        private int forcedUpTo;
+        // Sparse index: idxOffsets[i] is a record boundary and idxMaxBefore[i] the newest timestamp before it
+        private long[] idxMaxBefore = new long[16];
+        private int[] idxOffsets = new int[16];
+        private int idxSize;
+        private int lastIndexed = -INDEX_INTERVAL_BYTES;
+
+        private Segment(long seq, Path path) {
+            this.seq = seq;
+            this.path = path;
+        }
+
+        static Segment create(long seq, Path path, int capacity) throws IOException {
+            Segment s = new Segment(seq, path);
+            s.channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            s.buffer = s.channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+            return s;
+        }
+
+        // Reopen a segment that was still being written: scan to the last intact record and keep appending
+        static Segment recover(Path path, int capacity) throws IOException {
+            Segment s = new Segment(seqOf(path), path);
+            s.channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            long size = Math.max(s.channel.size(), capacity);
+            s.buffer = s.channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            s.rebuild();
+            return s;
+        }
+
+        static Segment openSealed(Path path) throws IOException {
+            Segment s = new Segment(seqOf(path), path);
+            ByteBuffer idx = ByteBuffer.wrap(Files.readAllBytes(indexPath(path)));
+            try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+                if (idx.remaining() < 32 || idx.getInt() != INDEX_MAGIC) {
+                    // Torn index: rebuild it from the log itself
+                    s.buffer = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+                    s.rebuild();
+                    s.buffer = ch.map(FileChannel.MapMode.READ_ONLY, 0, s.end);
+                    s.sealed = true;
+                    s.writeIndex();
+                    return s;
+                }
+                s.count = idx.getInt();
+                s.minTs = idx.getLong();
+                s.maxTs = idx.getLong();
+                s.end = idx.getInt();
+                int n = idx.getInt();
+                s.idxMaxBefore = new long[Math.max(1, n)];
+                s.idxOffsets = new int[Math.max(1, n)];
+                for (int i = 0; i < n; i++) {
+                    s.idxMaxBefore[i] = idx.getLong();
+                    s.idxOffsets[i] = idx.getInt();
+                }
+                s.idxSize = n;
+                s.buffer = ch.map(FileChannel.MapMode.READ_ONLY, 0, s.end);
+            }
+            s.sealed = true;
+            return s;
+        }
+
+        int remaining() {
+            return buffer.capacity() - end - 4;
+        }
+
+        void append(ChatMessage m, int size) {
+            int pos = end;
+            addIndexEntry(pos);
+            ByteBuffer view = buffer.duplicate();
+            view.position(pos + RECORD_HEADER);
+            MessageCodec.encode(m, view);
+            CRC32C crc = new CRC32C();
+            crc.update(view.flip().position(pos + RECORD_HEADER));
+            buffer.putInt(pos + 4, (int) crc.getValue());
+            // Length goes in last: a record is only visible to recovery once it is complete
+            buffer.putInt(pos, size);
+            track(MessageCodec.peekEpochMillis(buffer, pos + RECORD_HEADER));
+            end = pos + RECORD_HEADER + size;
+        }
+
+        void force() {
+            if (end > forcedUpTo && buffer instanceof MappedByteBuffer) {
+                ((MappedByteBuffer) buffer).force(forcedUpTo, end - forcedUpTo);
+                forcedUpTo = end;
+            }
+        }
+
+        void seal() throws IOException {
+            force();
+            channel.truncate(end);
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, end);
+            channel.close();
+            channel = null;
+            sealed = true;
+            writeIndex();
+        }
+
+        // Calls the consumer for every record stamped at or after sinceMs and before untilMs
+        void scan(long sinceMs, long untilMs, Consumer<ChatMessage> consumer) {
+            ByteBuffer view = buffer.duplicate();
+            int limit = end;
+            int pos = startOffsetFor(sinceMs);
+            while (pos + RECORD_HEADER <= limit) {
+                int len = view.getInt(pos);
+                if (len <= 0) break;
+                int payload = pos + RECORD_HEADER;
+                long ts = MessageCodec.peekEpochMillis(view, payload);
+                if (ts >= sinceMs && ts < untilMs) {
+                    consumer.accept(MessageCodec.decode(view.duplicate().position(payload).limit(payload + len)));
+                }
+                pos = payload + len;
+            }
+        }
+
+        private synchronized int startOffsetFor(long sinceMs) {
+            // Last entry before which nothing is as new as sinceMs
+            int lo = 0, hi = idxSize - 1, found = 0;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                if (idxMaxBefore[mid] < sinceMs) {
+                    found = idxOffsets[mid];
+                    lo = mid + 1;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            return found;
+        }
+
+        private synchronized void addIndexEntry(int pos) {
+            if (pos - lastIndexed < INDEX_INTERVAL_BYTES) return;
+            if (idxSize == idxOffsets.length) {
+                idxOffsets = Arrays.copyOf(idxOffsets, idxSize * 2);
+                idxMaxBefore = Arrays.copyOf(idxMaxBefore, idxSize * 2);
+            }
+            idxOffsets[idxSize] = pos;
+            idxMaxBefore[idxSize] = maxTs;
+            idxSize++;
+            lastIndexed = pos;
+        }
+
+        private void track(long ts) {
+            if (ts < minTs) minTs = ts;
+            if (ts > maxTs) maxTs = ts;
+            count++;
+        }
+
+        private void rebuild() {
+            ByteBuffer view = buffer.duplicate();
+            int limit = view.capacity();
+            int pos = 0;
+            CRC32C crc = new CRC32C();
+            while (pos + RECORD_HEADER <= limit) {
+                int len = view.getInt(pos);
+                int payload = pos + RECORD_HEADER;
+                if (len <= 0 || payload + len > limit) break;
+                crc.reset();
+                crc.update(view.duplicate().position(payload).limit(payload + len));
+                if ((int) crc.getValue() != view.getInt(pos + 4)) {
+                    log.warn("Log segment {} has a torn record at offset {}, truncating there", path.getFileName(), pos);
+                    break;
+                }
+                addIndexEntry(pos);
+                track(MessageCodec.peekEpochMillis(view, payload));
+                pos = payload + len;
+            }
+            end = pos;
+            forcedUpTo = pos;
+            if (buffer.capacity() > pos + 4 && !buffer.isReadOnly()) {
+                // Clear a possibly torn tail so the end marker is unambiguous
+                buffer.putInt(pos, 0);
+            }
+        }
+
+        private void writeIndex() throws IOException {
+            ByteBuffer out = ByteBuffer.allocate(32 + idxSize * 12);
+            out.putInt(INDEX_MAGIC).putInt(count).putLong(minTs).putLong(maxTs).putInt(end).putInt(idxSize);
+            for (int i = 0; i < idxSize; i++) {
+                out.putLong(idxMaxBefore[i]).putInt(idxOffsets[i]);
+            }
+            Path idx = indexPath(path);
+            Path tmp = idx.resolveSibling(idx.getFileName() + ".tmp");
+            Files.write(tmp, out.array());
+            Files.move(tmp, idx, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        private static long seqOf(Path path) {
+            String name = path.getFileName().toString();
+            return Long.parseLong(name.substring(0, name.length() - LOG_SUFFIX.length()));
+        }
+    }
+}
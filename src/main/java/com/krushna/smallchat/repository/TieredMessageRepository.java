@@ -0,0 +1,86 @@
+package com.krushna.smallchat.repository;
+
+import com.krushna.smallchat.model.ChatMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Local log in front of a remote store. Writes are durable once the local tier has them; the remote copy is
+ * best-effort. Reads come from the local tier first and are topped up from the remote one, so a fresh disk
+ * (new instance, wiped volume) still sees the full history.
+ */
+public class TieredMessageRepository implements MessageRepository {
+
+    private static final Logger log = LoggerFactory.getLogger(TieredMessageRepository.class);
+
+    private final MessageRepository local;
+    private final MessageRepository remote;
+
+    public TieredMessageRepository(MessageRepository local, MessageRepository remote) {
+        this.local = local;
+        this.remote = remote;
+    }
+
+    @Override
+    public void save(ChatMessage message) throws Exception {
+        saveAll(List.of(message));
+    }
+
+    @Override
+    public void saveAll(List<ChatMessage> messages) throws Exception {
+        local.saveAll(messages);
+        if (remote.isEnabled()) {
+            try {
+                remote.saveAll(messages);
+            } catch (Exception e) {
+                log.warn("Remote tier failed to persist {} messages: {}", messages.size(), e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public List<ChatMessage> loadSince(LocalDateTime since) throws Exception {
+        return loadBetween(since, null);
+    }
+
+    @Override
+    public List<ChatMessage> loadBetween(LocalDateTime since, LocalDateTime until) throws Exception {
+        Map<String, ChatMessage> byId = new LinkedHashMap<>();
+        for (ChatMessage m : local.loadBetween(since, until)) byId.put(m.getId(), m);
+        if (remote.isEnabled()) {
+            for (ChatMessage m : remote.loadBetween(since, until)) byId.putIfAbsent(m.getId(), m);
+        }
+        return new ArrayList<>(byId.values());
+    }
+
+    // Local pages first; coverage is only reported by the remote tier, which is the complete one
+    @Override
+    public void streamSince(LocalDateTime since, HistorySink sink) throws Exception {
+        if (!remote.isEnabled()) {
+            local.streamSince(since, sink);
+            return;
+        }
+        local.streamSince(since, sink::page);
+        remote.streamSince(since, sink);
+    }
+
+    @Override
+    public int deleteBefore(LocalDateTime cutoff) throws Exception {
+        int deleted = local.deleteBefore(cutoff);
+        if (remote.isEnabled()) {
+            deleted += remote.deleteBefore(cutoff);
+        }
+        return deleted;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return local.isEnabled();
+    }
+}
@@ -0,0 +1,100 @@
+package com.krushna.smallchat.repository;
+
+import com.krushna.smallchat.model.ChatMessage;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times every call into a backend as {@code smallchat.repository.call{backend, op, outcome}}. Streamed loads are timed
+ * until the last page has been handed over, so they include the time the caller's sink takes.
+ */
+public class TimedMessageRepository implements MessageRepository {
+
+    private final MessageRepository delegate;
+    private final String backend;
+    private final MeterRegistry registry;
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+
+    public TimedMessageRepository(MessageRepository delegate, String backend, MeterRegistry registry) {
+        this.delegate = delegate;
+        this.backend = backend;
+        this.registry = registry;
+    }
+
+    @Override
+    public void save(ChatMessage message) throws Exception {
+        time("save", () -> {
+            delegate.save(message);
+            return null;
+        });
+    }
+
+    @Override
+    public void saveAll(List<ChatMessage> messages) throws Exception {
+        time("saveAll", () -> {
+            delegate.saveAll(messages);
+            return null;
+        });
+    }
+
+    @Override
+    public List<ChatMessage> loadSince(LocalDateTime since) throws Exception {
+        return time("loadSince", () -> delegate.loadSince(since));
+    }
+
+    @Override
+    public List<ChatMessage> loadBetween(LocalDateTime since, LocalDateTime until) throws Exception {
+        return time("loadBetween", () -> delegate.loadBetween(since, until));
+    }
+
+    @Override
+    public void streamSince(LocalDateTime since, HistorySink sink) throws Exception {
+        time("streamSince", () -> {
+            delegate.streamSince(since, sink);
+            return null;
+        });
+    }
+
+    @Override
+    public int deleteBefore(LocalDateTime cutoff) throws Exception {
+        return time("deleteBefore", () -> delegate.deleteBefore(cutoff));
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return delegate.isEnabled();
+    }
+
+    private <T> T time(String op, Call<T> call) throws Exception {
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            T result = call.run();
+            ok = true;
+            return result;
+        } finally {
+            timer(op, ok).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private Timer timer(String op, boolean ok) {
+        String outcome = ok ? "success" : "error";
+        return timers.computeIfAbsent(op + "/" + outcome, k -> Timer.builder("smallchat.repository.call")
+                .description("Latency of persistence backend calls")
+                .tag("backend", backend)
+                .tag("op", op)
+                .tag("outcome", outcome)
+                .register(registry));
+    }
+
+    @FunctionalInterface
+    private interface Call<T> {
+        T run() throws Exception;
+    }
+}
@@ -24,6 +24,8 @@ public class AuthFilter extends OncePerRequestFilter {
         String path = request.getRequestURI();
         // Allow login endpoints and health
         if (path.equals("/login") || path.equals("/api/health")) return true;
+        // Kubernetes / load balancer probes; they report status only, full health details stay behind login
+        if (path.equals("/actuator/health/liveness") || path.equals("/actuator/health/readiness")) return true;
         // Allow static assets and common public paths
         String[] patterns = new String[]{
                 "/css/**", "/js/**", "/images/**", "/favicon.*", "/webjars/**", "/uploads/**", "/ws/**"
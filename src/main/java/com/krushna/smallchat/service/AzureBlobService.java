@@ -8,6 +8,8 @@ import com.azure.storage.blob.models.BlobItem;
 import com.azure.storage.blob.sas.BlobSasPermission;
 import com.azure.storage.blob.sas.BlobServiceSasSignatureValues;
 import com.azure.storage.common.sas.SasProtocol;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
@@ -19,6 +21,7 @@ import java.time.OffsetDateTime;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 @Service
 public class AzureBlobService {
@@ -26,11 +29,14 @@ public class AzureBlobService {
 
     private final boolean enabled;
     private final BlobContainerClient containerClient;
+    private final MeterRegistry registry;
 
     public AzureBlobService(
             @Value("${smallchat.azure.blob.connection-string:${smallchat.azure.table.connection-string:}}") String connectionString,
-            @Value("${smallchat.azure.blob.container:smallchatmedia}") String container
+            @Value("${smallchat.azure.blob.container:smallchatmedia}") String container,
+            MeterRegistry registry
     ) {
+        this.registry = registry;
         if (connectionString == null || connectionString.isBlank()) {
             this.enabled = false;
             this.containerClient = null;
@@ -68,9 +74,14 @@ public class AzureBlobService {
         // Important: use the authenticated container client to obtain a BlobClient.
         // Building a new BlobClient with just an endpoint would miss credentials and cause 401.
         BlobClient blobClient = containerClient.getBlobClient(blobName);
+        long start = System.nanoTime();
+        boolean ok = false;
         try (InputStream in = file.getInputStream()) {
             blobClient.upload(in, file.getSize());
             blobClient.setHttpHeaders(new com.azure.storage.blob.models.BlobHttpHeaders().setContentType(ct));
+            ok = true;
+        } finally {
+            record("upload", start, ok);
         }
         MediaItem item = new MediaItem();
         item.name = blobName;
@@ -84,6 +95,19 @@ public class AzureBlobService {
     public List<MediaItem> list() {
         List<MediaItem> list = new ArrayList<>();
         if (!enabled) return list;
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            listInto(list);
+            ok = true;
+        } finally {
+            record("list", start, ok);
+        }
+        return list;
+    }
+
+    // Listing pages through the container lazily, so the timed call covers the iteration
+    private void listInto(List<MediaItem> list) {
         for (BlobItem bi : containerClient.listBlobs()) {
             BlobClient bc = containerClient.getBlobClient(bi.getName());
             MediaItem mi = new MediaItem();
@@ -94,7 +118,15 @@ public class AzureBlobService {
             mi.lastModified = bi.getProperties() != null ? bi.getProperties().getLastModified() : null;
             list.add(mi);
         }
-        return list;
+    }
+
+    private void record(String op, long startNanos, boolean ok) {
+        Timer.builder("smallchat.azure.blob.call")
+                .description("Latency of Azure Blob Storage calls for media")
+                .tag("op", op)
+                .tag("outcome", ok ? "success" : "error")
+                .register(registry)
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
     }
 
     private static String safeExt(String name) {
@@ -0,0 +1,115 @@
+package com.krushna.smallchat.service;
+
+import com.krushna.smallchat.model.ChatMessage;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * Optional batching of broadcasts. With {@code smallchat.websocket.coalesce.window-ms} above zero, messages are held
+ * for up to that long and sent together as one frame carrying a JSON array, or sooner once
+ * {@code max-messages} have collected. Each room batches on its own. A message that arrives alone is still sent on
+ * its own, so quiet rooms see no change. Order is kept: batches go out one at a time, in arrival order.
+ */
+@Component
+public class BroadcastCoalescer {
+
+    private static final Logger log = LoggerFactory.getLogger(BroadcastCoalescer.class);
+
+    private final long windowMs;
+    private final int maxMessages;
+    private final DistributionSummary batchSizes;
+    private final ScheduledExecutorService timer;
+    private final Map<String, Batch> pending = new HashMap<>();
+    private volatile BiConsumer<String, Object> sink = (room, payload) -> { };
+
+    public BroadcastCoalescer(
+            @Value("${smallchat.websocket.coalesce.window-ms:0}") long windowMs,
+            @Value("${smallchat.websocket.coalesce.max-messages:50}") int maxMessages,
+            MeterRegistry registry
+    ) {
+        this.windowMs = Math.max(0, windowMs);
+        this.maxMessages = Math.max(1, maxMessages);
+        this.batchSizes = DistributionSummary.builder("smallchat.websocket.batch.size")
+                .description("Messages per coalesced /topic/public frame")
+                .register(registry);
+        if (this.windowMs > 0) {
+            this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "broadcast-coalesce");
+                t.setDaemon(true);
+                return t;
+            });
+            log.info("Coalescing broadcasts: window {} ms, up to {} messages per frame", this.windowMs, this.maxMessages);
+        } else {
+            this.timer = null;
+        }
+    }
+
+    public boolean isEnabled() {
+        return timer != null;
+    }
+
+    /**
+     * Receives each batch with its room: a single {@link ChatMessage}, or a {@code List<ChatMessage>},
+     * one call at a time.
+     */
+    public void setSink(BiConsumer<String, Object> sink) {
+        this.sink = sink;
+    }
+
+    /**
+     * Queues a message for its room's next batch.
+     */
+    public synchronized void add(ChatMessage message) {
+        String room = message.getRoom();
+        Batch batch = pending.computeIfAbsent(room, r -> new Batch());
+        batch.messages.add(message);
+        if (batch.messages.size() >= maxMessages) {
+            flush(room, batch);
+        } else if (batch.messages.size() == 1) {
+            timer.schedule(() -> flushIfCurrent(room, batch), windowMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private synchronized void flushIfCurrent(String room, Batch batch) {
+        // A batch that already went out on size leaves its timer behind; the next batch has its own
+        if (pending.get(room) == batch) flush(room, batch);
+    }
+
+    private void flush(String room, Batch batch) {
+        pending.remove(room);
+        List<ChatMessage> messages = batch.messages;
+        batchSizes.record(messages.size());
+        try {
+            sink.accept(room, messages.size() == 1 ? messages.get(0) : messages);
+        } catch (Exception e) {
+            log.warn("Failed to broadcast a batch of {} messages to room {}: {}", messages.size(), room, e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (timer == null) return;
+        timer.shutdownNow();
+        synchronized (this) {
+            for (Map.Entry<String, Batch> e : new ArrayList<>(pending.entrySet())) flush(e.getKey(), e.getValue());
+        }
+    }
+
+    private static final class Batch {
+        final List<ChatMessage> messages = new ArrayList<>();
+    }
+}
@@ -0,0 +1,120 @@
+package com.krushna.smallchat.service;
+
+import com.krushna.smallchat.cluster.PeerFanout;
+import com.krushna.smallchat.model.ChatMessage;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single path for getting a message to subscribers: stores it, sends it to this node's subscribers of its room's
+ * topic, and in cluster mode hands it to the other nodes, which store and send it to theirs. Frames carry one
+ * message, or a JSON array of them when {@link BroadcastCoalescer} is batching. Publishing is timed per source as
+ * {@code smallchat.broadcast.publish}, and handing a frame to the broker for fan-out as {@code smallchat.broadcast.send}.
+ */
+@Service
+public class ChatBroadcaster {
+
+    public static final String PUBLIC_TOPIC = "/topic/public";
+    public static final String ROOM_TOPIC_PREFIX = "/topic/room.";
+
+    // Where a published message came from, as the source tag of its timer
+    public static final String SOURCE_WEBSOCKET = "websocket";
+    public static final String SOURCE_MCP = "mcp";
+
+    @Autowired
+    private SimpMessagingTemplate messagingTemplate;
+
+    @Autowired
+    private MessageStorageService messageStorageService;
+
+    @Autowired
+    private PeerFanout peers;
+
+    @Autowired
+    private BroadcastCoalescer coalescer;
+
+    @Autowired
+    private MeterRegistry registry;
+
+    private final Map<String, Timer> publishTimers = new ConcurrentHashMap<>();
+    private Timer sendSingle;
+    private Timer sendBatch;
+
+    @PostConstruct
+    public void init() {
+        peers.setListener(this::deliverReplicated);
+        coalescer.setSink(this::sendNow);
+        sendSingle = sendTimer("single");
+        sendBatch = sendTimer("batch");
+    }
+
+    /**
+     * Stores and broadcasts a message created on this node; {@code source} is one of the {@code SOURCE_*} names.
+     */
+    public void publish(ChatMessage message, String source) {
+        long start = System.nanoTime();
+        try {
+            messageStorageService.saveMessage(message);
+            peers.forward(message);
+            send(message);
+        } finally {
+            publishTimer(source).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void deliverReplicated(ChatMessage message) {
+        messageStorageService.saveReplicated(message);
+        send(message);
+    }
+
+    /**
+     * The default room keeps {@code /topic/public}, which clients from before rooms subscribe to.
+     */
+    public static String topicFor(String room) {
+        return room == null || ChatMessage.DEFAULT_ROOM.equals(room) ? PUBLIC_TOPIC : ROOM_TOPIC_PREFIX + room;
+    }
+
+    private void send(ChatMessage message) {
+        if (coalescer.isEnabled()) {
+            coalescer.add(message);
+        } else {
+            sendNow(message.getRoom(), message);
+        }
+    }
+
+    /**
+     * Sends a {@link ChatMessage}, or a list of them from the coalescer, to this node's subscribers of the room.
+     */
+    private void sendNow(String room, Object payload) {
+        // One message-id for every subscriber (Spring otherwise numbers each session's copy), so that the frames of a
+        // broadcast are identical and SharedFrameEncoding can encode them once
+        String id = payload instanceof ChatMessage m ? m.getId() : null;
+        String messageId = id != null ? id : UUID.randomUUID().toString();
+        long start = System.nanoTime();
+        messagingTemplate.convertAndSend(topicFor(room), payload, Map.of("message-id", messageId));
+        (payload instanceof ChatMessage ? sendSingle : sendBatch).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    private Timer publishTimer(String source) {
+        return publishTimers.computeIfAbsent(source, s -> Timer.builder("smallchat.broadcast.publish")
+                .description("Time to store, forward to peers and broadcast a message created on this node")
+                .tag("source", s)
+                .register(registry));
+    }
+
+    private Timer sendTimer(String frame) {
+        return Timer.builder("smallchat.broadcast.send")
+                .description("Time for the broker to fan one frame out to the room's subscribers")
+                .tag("frame", frame)
+                .register(registry);
+    }
+}
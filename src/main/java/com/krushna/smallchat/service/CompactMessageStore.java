@@ -0,0 +1,712 @@
+package com.krushna.smallchat.service;
+
+import com.krushna.smallchat.model.ChatMessage;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+
+/**
+ * Columnar engine for long retention windows. Each message is a slot across primitive arrays:
+ * the id as two longs, the timestamp as epoch millis, the sender as a dictionary code, and the content as a
+ * reference into off-heap arena chunks. The timeline is an int array of slots in key order, and ids resolve
+ * through an open-addressing table, so the heap holds no per-message objects.
+ * {@link ChatMessage} views are built only when a read hands them out. A store holds one room, so the room is not
+ * stored per slot.
+ * <p>
+ * Timestamps are kept to the millisecond; {@link #normalize} gives callers the truncated form to index by. Ids that are not
+ * canonical lowercase UUIDs are rare and are kept as strings on the side.
+ * A read-write lock guards everything. Writes are appends in the common case.
+ */
+final class CompactMessageStore implements MessageStore {
+
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int CHUNK_SIZE = 1 << 20;
+    // Content this large gets a chunk of its own rather than wasting the tail of a shared one
+    private static final int DEDICATED_CHUNK_THRESHOLD = CHUNK_SIZE / 4;
+    private static final int TYPE_MASK = 0x0F;
+    private static final int TYPE_NONE = 0x0F;
+    private static final int OTHER_ID = 0x40;
+    private static final ChatMessage.MessageType[] TYPES = ChatMessage.MessageType.values();
+    // Column, order and id-table entries per live slot; content is counted by the arena
+    private static final int SLOT_BYTES = 60;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final String room;
+
+    // Per-slot columns
+    private long[] idHi;
+    private long[] idLo;
+    private long[] tsMillis;
+    private byte[] flags;
+    private int[] senders;
+    private int[] chunks;
+    private int[] offsets;
+    private int[] lengths;
+    private int[] stamps;
+    private int slotLimit;
+    private int[] freeSlots;
+    private int freeSlotCount;
+    private int count;
+    private int stampSeq;
+
+    // UUID ids -> slot + 1 (0 = empty), linear probing
+    private int[] uuidTable;
+    private int uuidCount;
+    // Ids that are not canonical UUIDs
+    private Map<Integer, String> otherIds;
+    private Map<String, Integer> otherIndex;
+
+    // Slots in key order, live range [orderStart, orderEnd)
+    private int[] order;
+    private int orderStart;
+    private int orderEnd;
+
+    private List<String> senderNames;
+    private Map<String, Integer> senderCodes;
+
+    // Content arena; a chunk is released once no live slot points into it
+    private List<ByteBuffer> arena;
+    private int[] chunkRefs;
+    private int[] freeChunks;
+    private int freeChunkCount;
+    private int currentChunk;
+    private int currentPos;
+    private long arenaBytes;
+
+    CompactMessageStore(String room) {
+        this.room = room;
+        reset();
+    }
+
+    @Override
+    public ChatMessage normalize(ChatMessage message) {
+        LocalDateTime ts = message.getTimestamp();
+        if (ts.getNano() % 1_000_000 == 0) return message;
+        ChatMessage copy = new ChatMessage(message.getId(), message.getSender(), message.getContent(), message.getType(),
+                ts.truncatedTo(ChronoUnit.MILLIS));
+        copy.setRoom(message.getRoom());
+        return copy;
+    }
+
+    @Override
+    public long put(ChatMessage message) {
+        lock.writeLock().lock();
+        try {
+            int existing = find(message.getId());
+            if (existing >= 0) {
+                removeFromOrder(existing);
+                free(existing);
+            }
+            int slot = store(message);
+            insertOrdered(slot);
+            return stamps[slot];
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean putIfAbsent(ChatMessage message) {
+        lock.writeLock().lock();
+        try {
+            if (find(message.getId()) >= 0) return false;
+            insertOrdered(store(message));
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public int putAllIfAbsent(List<ChatMessage> messages) {
+        lock.writeLock().lock();
+        try {
+            int[] added = new int[messages.size()];
+            int n = 0;
+            for (ChatMessage m : messages) {
+                if (find(m.getId()) >= 0) continue;
+                added[n++] = store(m);
+            }
+            merge(added, n);
+            return n;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public ChatMessage get(String id) {
+        if (id == null) return null;
+        lock.readLock().lock();
+        try {
+            int slot = find(id);
+            return slot >= 0 ? materialize(slot) : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public MessageKey keyOf(String id) {
+        if (id == null) return null;
+        lock.readLock().lock();
+        try {
+            int slot = find(id);
+            return slot >= 0 ? new MessageKey(timestampOf(slot), id) : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean isLive(ChatMessage message, long stamp) {
+        lock.readLock().lock();
+        try {
+            int slot = find(message.getId());
+            return slot >= 0 && stamps[slot] == (int) stamp;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void scan(MessageKey after, MessageKey before, boolean descending, boolean includeSystem, Predicate<ChatMessage> visitor) {
+        lock.readLock().lock();
+        try {
+            int from = after != null ? firstAfter(new Bound(after), true) : orderStart;
+            int to = before != null ? firstAfter(new Bound(before), false) : orderEnd;
+            if (descending) {
+                for (int i = to - 1; i >= from; i--) {
+                    if (!visit(order[i], includeSystem, visitor)) break;
+                }
+            } else {
+                for (int i = from; i < to; i++) {
+                    if (!visit(order[i], includeSystem, visitor)) break;
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int removeBefore(LocalDateTime cutoff) {
+        long cutoffMillis = toEpochMillis(cutoff);
+        boolean subMillis = cutoff.getNano() % 1_000_000 != 0;
+        lock.writeLock().lock();
+        try {
+            int removed = 0;
+            while (orderStart < orderEnd) {
+                long ts = tsMillis[order[orderStart]];
+                if (ts > cutoffMillis || (ts == cutoffMillis && !subMillis)) break;
+                free(order[orderStart++]);
+                removed++;
+            }
+            if (orderStart == orderEnd) orderStart = orderEnd = 0;
+            return removed;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public MessageKey removeOldest(int max) {
+        lock.writeLock().lock();
+        try {
+            MessageKey last = null;
+            for (int removed = 0; removed < max && orderStart < orderEnd; removed++) {
+                int slot = order[orderStart++];
+                last = new MessageKey(timestampOf(slot), idOf(slot));
+                free(slot);
+            }
+            if (orderStart == orderEnd) orderStart = orderEnd = 0;
+            return last;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public long estimatedBytes() {
+        lock.readLock().lock();
+        try {
+            return (long) count * SLOT_BYTES + arenaBytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return count;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            reset();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Off-heap bytes currently held by the content arena.
+     */
+    long getArenaBytes() {
+        lock.readLock().lock();
+        try {
+            return arenaBytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void reset() {
+        idHi = new long[INITIAL_CAPACITY];
+        idLo = new long[INITIAL_CAPACITY];
+        tsMillis = new long[INITIAL_CAPACITY];
+        flags = new byte[INITIAL_CAPACITY];
+        senders = new int[INITIAL_CAPACITY];
+        chunks = new int[INITIAL_CAPACITY];
+        offsets = new int[INITIAL_CAPACITY];
+        lengths = new int[INITIAL_CAPACITY];
+        stamps = new int[INITIAL_CAPACITY];
+        slotLimit = 0;
+        freeSlots = new int[64];
+        freeSlotCount = 0;
+        count = 0;
+        uuidTable = new int[INITIAL_CAPACITY * 2];
+        uuidCount = 0;
+        otherIds = new HashMap<>();
+        otherIndex = new HashMap<>();
+        order = new int[INITIAL_CAPACITY];
+        orderStart = orderEnd = 0;
+        senderNames = new ArrayList<>();
+        senderCodes = new HashMap<>();
+        arena = new ArrayList<>();
+        chunkRefs = new int[16];
+        freeChunks = new int[16];
+        freeChunkCount = 0;
+        currentChunk = -1;
+        currentPos = 0;
+        arenaBytes = 0;
+    }
+
+    // --- slots ---
+
+    private int store(ChatMessage m) {
+        int slot = allocateSlot();
+        tsMillis[slot] = toEpochMillis(m.getTimestamp());
+        int type = m.getType() != null ? m.getType().ordinal() : TYPE_NONE;
+        String id = m.getId();
+        if (isCanonicalUuid(id)) {
+            idHi[slot] = parseHex(id, 0);
+            idLo[slot] = parseHex(id, 19);
+            flags[slot] = (byte) type;
+            indexUuid(slot);
+        } else {
+            idHi[slot] = idLo[slot] = 0;
+            flags[slot] = (byte) (type | OTHER_ID);
+            otherIds.put(slot, id);
+            otherIndex.put(id, slot);
+        }
+        senders[slot] = senderCode(m.getSender());
+        storeContent(slot, m.getContent());
+        stamps[slot] = ++stampSeq;
+        count++;
+        return slot;
+    }
+
+    private int allocateSlot() {
+        if (freeSlotCount > 0) return freeSlots[--freeSlotCount];
+        if (slotLimit == idHi.length) {
+            int capacity = idHi.length * 2;
+            idHi = Arrays.copyOf(idHi, capacity);
+            idLo = Arrays.copyOf(idLo, capacity);
+            tsMillis = Arrays.copyOf(tsMillis, capacity);
+            flags = Arrays.copyOf(flags, capacity);
+            senders = Arrays.copyOf(senders, capacity);
+            chunks = Arrays.copyOf(chunks, capacity);
+            offsets = Arrays.copyOf(offsets, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            stamps = Arrays.copyOf(stamps, capacity);
+        }
+        return slotLimit++;
+    }
+
+    private void free(int slot) {
+        if ((flags[slot] & OTHER_ID) != 0) {
+            otherIndex.remove(otherIds.remove(slot));
+        } else {
+            unindexUuid(slot);
+        }
+        releaseContent(slot);
+        if (freeSlotCount == freeSlots.length) freeSlots = Arrays.copyOf(freeSlots, freeSlotCount * 2);
+        freeSlots[freeSlotCount++] = slot;
+        count--;
+    }
+
+    private int find(String id) {
+        if (id == null) return -1;
+        if (!isCanonicalUuid(id)) {
+            Integer slot = otherIndex.get(id);
+            return slot != null ? slot : -1;
+        }
+        long hi = parseHex(id, 0);
+        long lo = parseHex(id, 19);
+        int mask = uuidTable.length - 1;
+        for (int i = hash(hi, lo) & mask; ; i = (i + 1) & mask) {
+            int v = uuidTable[i];
+            if (v == 0) return -1;
+            if (idHi[v - 1] == hi && idLo[v - 1] == lo) return v - 1;
+        }
+    }
+
+    private ChatMessage materialize(int slot) {
+        int type = flags[slot] & TYPE_MASK;
+        int sender = senders[slot];
+        ChatMessage m = new ChatMessage(
+                idOf(slot),
+                sender >= 0 ? senderNames.get(sender) : null,
+                contentOf(slot),
+                type != TYPE_NONE ? TYPES[type] : null,
+                timestampOf(slot));
+        m.setRoom(room);
+        return m;
+    }
+
+    private boolean visit(int slot, boolean includeSystem, Predicate<ChatMessage> visitor) {
+        if (!includeSystem) {
+            int type = flags[slot] & TYPE_MASK;
+            if (type != TYPE_NONE && MessageStore.isSystem(TYPES[type])) return true;
+        }
+        return visitor.test(materialize(slot));
+    }
+
+    private String idOf(int slot) {
+        if ((flags[slot] & OTHER_ID) != 0) return otherIds.get(slot);
+        return new UUID(idHi[slot], idLo[slot]).toString();
+    }
+
+    private LocalDateTime timestampOf(int slot) {
+        long ms = tsMillis[slot];
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(ms, 1000L), (int) Math.floorMod(ms, 1000L) * 1_000_000, ZoneOffset.UTC);
+    }
+
+    private int senderCode(String sender) {
+        if (sender == null) return -1;
+        Integer code = senderCodes.get(sender);
+        if (code == null) {
+            code = senderNames.size();
+            senderNames.add(sender);
+            senderCodes.put(sender, code);
+        }
+        return code;
+    }
+
+    // --- UUID index ---
+
+    private void indexUuid(int slot) {
+        if ((uuidCount + 1) * 2 > uuidTable.length) rehash(uuidTable.length * 2);
+        int mask = uuidTable.length - 1;
+        int i = hash(idHi[slot], idLo[slot]) & mask;
+        while (uuidTable[i] != 0) i = (i + 1) & mask;
+        uuidTable[i] = slot + 1;
+        uuidCount++;
+    }
+
+    private void unindexUuid(int slot) {
+        int mask = uuidTable.length - 1;
+        int i = hash(idHi[slot], idLo[slot]) & mask;
+        while (uuidTable[i] != slot + 1) i = (i + 1) & mask;
+        uuidTable[i] = 0;
+        uuidCount--;
+        // Backward-shift deletion keeps probe chains intact without tombstones
+        for (int j = (i + 1) & mask; uuidTable[j] != 0; j = (j + 1) & mask) {
+            int v = uuidTable[j];
+            int home = hash(idHi[v - 1], idLo[v - 1]) & mask;
+            boolean reachable = i <= j ? (home > i && home <= j) : (home > i || home <= j);
+            if (!reachable) {
+                uuidTable[i] = v;
+                uuidTable[j] = 0;
+                i = j;
+            }
+        }
+    }
+
+    private void rehash(int capacity) {
+        int[] old = uuidTable;
+        uuidTable = new int[capacity];
+        int mask = capacity - 1;
+        for (int v : old) {
+            if (v == 0) continue;
+            int i = hash(idHi[v - 1], idLo[v - 1]) & mask;
+            while (uuidTable[i] != 0) i = (i + 1) & mask;
+            uuidTable[i] = v;
+        }
+    }
+
+    private static int hash(long hi, long lo) {
+        long h = (hi ^ Long.rotateLeft(lo, 29)) * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    // --- timeline ---
+
+    private void insertOrdered(int slot) {
+        if (orderStart == orderEnd || compareSlots(order[orderEnd - 1], slot) < 0) {
+            ensureOrderCapacity(1);
+            order[orderEnd++] = slot;
+            return;
+        }
+        int p = orderStart;
+        int hi = orderEnd;
+        while (p < hi) {
+            int mid = (p + hi) >>> 1;
+            if (compareSlots(order[mid], slot) < 0) p = mid + 1; else hi = mid;
+        }
+        if (p == orderStart && orderStart > 0) {
+            order[--orderStart] = slot;
+            return;
+        }
+        int offset = ensureOrderCapacity(1);
+        p -= offset;
+        System.arraycopy(order, p, order, p + 1, orderEnd - p);
+        order[p] = slot;
+        orderEnd++;
+    }
+
+    // One linear merge per batch, so newest-first hydration does not shift the timeline once per message
+    private void merge(int[] added, int n) {
+        if (n == 0) return;
+        Integer[] sorted = new Integer[n];
+        for (int i = 0; i < n; i++) sorted[i] = added[i];
+        Arrays.sort(sorted, this::compareSlots);
+        if (orderStart == orderEnd || compareSlots(order[orderEnd - 1], sorted[0]) < 0) {
+            ensureOrderCapacity(n);
+            for (Integer slot : sorted) order[orderEnd++] = slot;
+            return;
+        }
+        int existing = orderEnd - orderStart;
+        int[] merged = new int[Math.max(order.length, Integer.highestOneBit(existing + n) << 1)];
+        int i = orderStart;
+        int j = 0;
+        int k = 0;
+        while (i < orderEnd && j < n) {
+            merged[k++] = compareSlots(order[i], sorted[j]) < 0 ? order[i++] : sorted[j++];
+        }
+        while (i < orderEnd) merged[k++] = order[i++];
+        while (j < n) merged[k++] = sorted[j++];
+        order = merged;
+        orderStart = 0;
+        orderEnd = k;
+    }
+
+    private void removeFromOrder(int slot) {
+        int p = orderStart;
+        int hi = orderEnd;
+        while (p < hi) {
+            int mid = (p + hi) >>> 1;
+            if (compareSlots(order[mid], slot) < 0) p = mid + 1; else hi = mid;
+        }
+        if (p == orderStart) {
+            orderStart++;
+        } else {
+            System.arraycopy(order, p + 1, order, p, orderEnd - p - 1);
+            orderEnd--;
+        }
+    }
+
+    /**
+     * Makes room for {@code extra} more slots at the end, compacting or growing the array.
+     * @return how far the live range moved down
+     */
+    private int ensureOrderCapacity(int extra) {
+        if (orderEnd + extra <= order.length) return 0;
+        int shift = orderStart;
+        int live = orderEnd - orderStart;
+        int[] target = live + extra <= order.length / 2 ? order : new int[Math.max(order.length * 2, live + extra)];
+        System.arraycopy(order, orderStart, target, 0, live);
+        order = target;
+        orderStart = 0;
+        orderEnd = live;
+        return shift;
+    }
+
+    /**
+     * Index of the first slot in the timeline above {@code bound} (or at or above it, when not {@code strict}).
+     */
+    private int firstAfter(Bound bound, boolean strict) {
+        int lo = orderStart;
+        int hi = orderEnd;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            int c = compareToBound(order[mid], bound);
+            if (c < 0 || (strict && c == 0)) lo = mid + 1; else hi = mid;
+        }
+        return lo;
+    }
+
+    private int compareSlots(int a, int b) {
+        int c = Long.compare(tsMillis[a], tsMillis[b]);
+        if (c != 0) return c;
+        if (((flags[a] | flags[b]) & OTHER_ID) == 0) {
+            // Unsigned order of the two halves matches the order of the canonical strings
+            c = Long.compareUnsigned(idHi[a], idHi[b]);
+            return c != 0 ? c : Long.compareUnsigned(idLo[a], idLo[b]);
+        }
+        return idOf(a).compareTo(idOf(b));
+    }
+
+    private int compareToBound(int slot, Bound b) {
+        int c = Long.compare(tsMillis[slot], b.millis);
+        if (c != 0) return c;
+        if (b.subMillis) return -1;
+        if (b.id.isEmpty()) return 1;
+        if (b.uuid && (flags[slot] & OTHER_ID) == 0) {
+            c = Long.compareUnsigned(idHi[slot], b.hi);
+            return c != 0 ? c : Long.compareUnsigned(idLo[slot], b.lo);
+        }
+        return idOf(slot).compareTo(b.id);
+    }
+
+    // --- content arena ---
+
+    private void storeContent(int slot, String content) {
+        if (content == null || content.isEmpty()) {
+            chunks[slot] = -1;
+            offsets[slot] = 0;
+            lengths[slot] = content == null ? -1 : 0;
+            return;
+        }
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        int chunk;
+        int offset;
+        if (bytes.length >= DEDICATED_CHUNK_THRESHOLD) {
+            chunk = newChunk(bytes.length);
+            offset = 0;
+        } else {
+            if (currentChunk < 0 || currentPos + bytes.length > CHUNK_SIZE) {
+                int previous = currentChunk;
+                currentChunk = newChunk(CHUNK_SIZE);
+                currentPos = 0;
+                if (previous >= 0 && chunkRefs[previous] == 0) releaseChunk(previous);
+            }
+            chunk = currentChunk;
+            offset = currentPos;
+            currentPos += bytes.length;
+        }
+        arena.get(chunk).put(offset, bytes);
+        chunkRefs[chunk]++;
+        chunks[slot] = chunk;
+        offsets[slot] = offset;
+        lengths[slot] = bytes.length;
+    }
+
+    private String contentOf(int slot) {
+        int len = lengths[slot];
+        if (len < 0) return null;
+        if (len == 0) return "";
+        byte[] bytes = new byte[len];
+        arena.get(chunks[slot]).get(offsets[slot], bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private void releaseContent(int slot) {
+        int chunk = chunks[slot];
+        if (chunk < 0) return;
+        if (--chunkRefs[chunk] == 0 && chunk != currentChunk) releaseChunk(chunk);
+    }
+
+    private int newChunk(int size) {
+        int chunk;
+        if (freeChunkCount > 0) {
+            chunk = freeChunks[--freeChunkCount];
+            arena.set(chunk, ByteBuffer.allocateDirect(size));
+        } else {
+            chunk = arena.size();
+            arena.add(ByteBuffer.allocateDirect(size));
+            if (chunk == chunkRefs.length) chunkRefs = Arrays.copyOf(chunkRefs, chunk * 2);
+        }
+        chunkRefs[chunk] = 0;
+        arenaBytes += size;
+        return chunk;
+    }
+
+    private void releaseChunk(int chunk) {
+        arenaBytes -= arena.get(chunk).capacity();
+        // Direct memory is returned when the buffer is collected
+        arena.set(chunk, null);
+        if (freeChunkCount == freeChunks.length) freeChunks = Arrays.copyOf(freeChunks, freeChunkCount * 2);
+        freeChunks[freeChunkCount++] = chunk;
+    }
+
+    // --- helpers ---
+
+    private static long toEpochMillis(LocalDateTime ts) {
+        return ts.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    // Only the form UUID.toString() produces, so the two-long encoding round-trips to the same string
+    private static boolean isCanonicalUuid(String s) {
+        if (s.length() != 36) return false;
+        for (int i = 0; i < 36; i++) {
+            char c = s.charAt(i);
+            if (i == 8 || i == 13 || i == 18 || i == 23) {
+                if (c != '-') return false;
+            } else if (!((c >= '0' && c <= '9') || (c >= 'a' && c <= 'f'))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // 16 hex digits starting at {@code from}, skipping dashes
+    private static long parseHex(String s, int from) {
+        long v = 0;
+        int digits = 0;
+        for (int i = from; digits < 16; i++) {
+            char c = s.charAt(i);
+            if (c == '-') continue;
+            v = (v << 4) | Character.digit(c, 16);
+            digits++;
+        }
+        return v;
+    }
+
+    private static final class Bound {
+        final long millis;
+        final boolean subMillis;
+        final String id;
+        final boolean uuid;
+        final long hi;
+        final long lo;
+
+        Bound(MessageKey key) {
+            this.millis = toEpochMillis(key.getTimestamp());
+            this.subMillis = key.getTimestamp().getNano() % 1_000_000 != 0;
+            this.id = key.getId();
+            this.uuid = isCanonicalUuid(id);
+            this.hi = uuid ? parseHex(id, 0) : 0;
+            this.lo = uuid ? parseHex(id, 19) : 0;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.krushna.smallchat.service;
+
+import com.krushna.smallchat.model.ChatMessage;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * Default engine: the saved {@link ChatMessage} objects themselves, in a hash map by id and a skip list by key.
+ * Lock-free, and reads hand back the stored instances without copying.
+ */
+final class HeapMessageStore implements MessageStore {
+
+    // Measured retained size of a message with short strings: the object, its id, timestamp, key and map entries
+    private static final int MESSAGE_OVERHEAD_BYTES = 355;
+
+    private final ConcurrentMap<String, ChatMessage> messages = new ConcurrentHashMap<>();
+    private final ConcurrentNavigableMap<MessageKey, ChatMessage> timeline = new ConcurrentSkipListMap<>();
+    private final AtomicLong bytes = new AtomicLong();
+
+    @Override
+    public long put(ChatMessage message) {
+        MessageKey key = MessageKey.of(message);
+        // compute() serializes writers of the same id so the timeline never keeps a stale key
+        messages.compute(message.getId(), (id, previous) -> {
+            if (previous != null && previous != message) {
+                timeline.remove(MessageKey.of(previous), previous);
+                bytes.addAndGet(-estimate(previous));
+            }
+            if (previous != message) bytes.addAndGet(estimate(message));
+            timeline.put(key, message);
+            return message;
+        });
+        return 0;
+    }
+
+    @Override
+    public boolean putIfAbsent(ChatMessage message) {
+        ChatMessage current = messages.computeIfAbsent(message.getId(), id -> {
+            timeline.put(MessageKey.of(message), message);
+            bytes.addAndGet(estimate(message));
+            return message;
+        });
+        return current == message;
+    }
+
+    @Override
+    public ChatMessage get(String id) {
+        return messages.get(id);
+    }
+
+    @Override
+    public MessageKey keyOf(String id) {
+        ChatMessage m = messages.get(id);
+        return m != null ? MessageKey.of(m) : null;
+    }
+
+    @Override
+    public boolean isLive(ChatMessage message, long stamp) {
+        return messages.get(message.getId()) == message;
+    }
+
+    @Override
+    public void scan(MessageKey after, MessageKey before, boolean descending, boolean includeSystem, Predicate<ChatMessage> visitor) {
+        if (after != null && before != null && after.compareTo(before) >= 0) return;
+        NavigableMap<MessageKey, ChatMessage> range = timeline;
+        if (after != null) range = range.tailMap(after, false);
+        if (before != null) range = range.headMap(before, false);
+        for (ChatMessage m : (descending ? range.descendingMap() : range).values()) {
+            if (!includeSystem && MessageStore.isSystem(m.getType())) continue;
+            if (!visitor.test(m)) break;
+        }
+    }
+
+    @Override
+    public int removeBefore(LocalDateTime cutoff) {
+        // Expired messages are exactly the head of the timeline
+        int removed = 0;
+        Map.Entry<MessageKey, ChatMessage> oldest;
+        while ((oldest = timeline.firstEntry()) != null && oldest.getKey().getTimestamp().isBefore(cutoff)) {
+            if (timeline.remove(oldest.getKey(), oldest.getValue())) {
+                messages.remove(oldest.getKey().getId(), oldest.getValue());
+                bytes.addAndGet(-estimate(oldest.getValue()));
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    @Override
+    public MessageKey removeOldest(int max) {
+        MessageKey last = null;
+        for (int removed = 0; removed < max; ) {
+            Map.Entry<MessageKey, ChatMessage> oldest = timeline.firstEntry();
+            if (oldest == null) break;
+            if (timeline.remove(oldest.getKey(), oldest.getValue())) {
+                messages.remove(oldest.getKey().getId(), oldest.getValue());
+                bytes.addAndGet(-estimate(oldest.getValue()));
+                last = oldest.getKey();
+                removed++;
+            }
+        }
+        return last;
+    }
+
+    @Override
+    public long estimatedBytes() {
+        return bytes.get();
+    }
+
+    @Override
+    public int size() {
+        return messages.size();
+    }
+
+    @Override
+    public void clear() {
+        messages.clear();
+        timeline.clear();
+        bytes.set(0);
+    }
+
+    private static long estimate(ChatMessage m) {
+        return MESSAGE_OVERHEAD_BYTES
+                + (m.getSender() != null ? m.getSender().length() : 0)
+                + (m.getContent() != null ? m.getContent().length() : 0);
+    }
+}
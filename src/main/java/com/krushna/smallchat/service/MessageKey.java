@@ -0,0 +1,81 @@
+package com.krushna.smallchat.service;
+
+import com.krushna.smallchat.model.ChatMessage;
+
+import java.time.LocalDateTime;
+import java.util.Objects;
+
+/**
+ * Ordering key for the in-memory message timeline: timestamp first, id breaks ties.
+ */
+public final class MessageKey implements Comparable<MessageKey> {
+
+    private final LocalDateTime timestamp;
+    private final String id;
+
+    public MessageKey(LocalDateTime timestamp, String id) {
+        this.timestamp = Objects.requireNonNull(timestamp, "timestamp");
+        this.id = Objects.requireNonNull(id, "id");
+    }
+
+    public static MessageKey of(ChatMessage message) {
+        return new MessageKey(message.getTimestamp(), message.getId());
+    }
+
+    /**
+     * Lowest possible key for the given instant, i.e. sorts before every message stamped at that time.
+     */
+    public static MessageKey lowest(LocalDateTime timestamp) {
+        return new MessageKey(timestamp, "");
+    }
+
+    /**
+     * The tighter of two lower bounds; null means unbounded.
+     */
+    public static MessageKey later(MessageKey a, MessageKey b) {
+        if (a == null) return b;
+        if (b == null) return a;
+        return a.compareTo(b) >= 0 ? a : b;
+    }
+
+    /**
+     * The tighter of two upper bounds; null means unbounded.
+     */
+    public static MessageKey earlier(MessageKey a, MessageKey b) {
+        if (a == null) return b;
+        if (b == null) return a;
+        return a.compareTo(b) <= 0 ? a : b;
+    }
+
+    public LocalDateTime getTimestamp() {
+        return timestamp;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    @Override
+    public int compareTo(MessageKey other) {
+        int c = timestamp.compareTo(other.timestamp);
+        return c != 0 ? c : id.compareTo(other.id);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof MessageKey)) return false;
+        MessageKey that = (MessageKey) o;
+        return timestamp.equals(that.timestamp) && id.equals(that.id);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * timestamp.hashCode() + id.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return timestamp + "/" + id;
+    }
+}
@@ -1,7 +1,15 @@
 package com.krushna.smallchat.service;
 
 import com.krushna.smallchat.model.ChatMessage;
+import com.krushna.smallchat.model.MessagePage;
+import com.krushna.smallchat.model.MessageSync;
+import com.krushna.smallchat.model.SearchResults;
+import com.krushna.smallchat.repository.HistorySink;
 import com.krushna.smallchat.repository.MessageRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -10,98 +18,491 @@ import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.stream.Collectors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 
 @Service
 public class MessageStorageService {
 
     private static final Logger log = LoggerFactory.getLogger(MessageStorageService.class);
 
-    private final ConcurrentMap<String, ChatMessage> messages = new ConcurrentHashMap<>();
+    private static final DateTimeFormatter[] CURSOR_FORMATS = {
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"),
+            DateTimeFormatter.ISO_LOCAL_DATE_TIME
+    };
+
+    private static final int RECENT_BUFFER_CAPACITY = 1024;
+    private static final Duration SNAPSHOT_SLACK = Duration.ofMinutes(1);
+    private static final int ITERATION_PAGE_SIZE = 1000;
+    private static final int EVICTION_BATCH = 1000;
+    private static final Duration EVICTED_WINDOW = Duration.ofHours(1);
+    private static final Duration MAX_EVICTED_WINDOW = Duration.ofDays(1);
+
+    // One shard per room, each with its own store, tail caches and retention, so a read only touches its room
+    private final ConcurrentMap<String, Room> rooms = new ConcurrentHashMap<>();
+    private final Map<String, Integer> roomRetentionDays = new HashMap<>();
+    private final Object evictionLock = new Object();
+
+    public enum HydrationState { DISABLED, LOADING, READY, FAILED }
+
+    private volatile HydrationState hydrationState = HydrationState.DISABLED;
+    private volatile LocalDateTime hydratedFrom;
+    private final AtomicInteger hydratedCount = new AtomicInteger();
+
+    // Bumped after every change to any room, so a reader that saw version v has seen at least the data of v
+    private final AtomicLong version = new AtomicLong();
+    private volatile long lastModified = System.currentTimeMillis();
+    private final String versionEpoch = Long.toString(System.currentTimeMillis(), 36);
     private final ExecutorService async = Executors.newSingleThreadExecutor(r -> {
-        Thread t = new Thread(r, "msg-persist-async");
+        Thread t = new Thread(r, "msg-cleanup-async");
         t.setDaemon(true);
         return t;
     });
     
     @Autowired(required = false)
     private MessageRepository repository;
+
+    @Autowired
+    private WriteBehindPersister writeBehind;
+
+    @Autowired
+    private SnapshotService snapshots;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final Map<String, Timer> readTimers = new ConcurrentHashMap<>();
+    private Timer saveTimer;
+    private Timer replicatedSaveTimer;
+    private Timer evictionTimer;
+    private Timer cleanupTimer;
+    private Counter expiredCounter;
+    private Counter overCapCounter;
     
     @Value("${smallchat.message.retention.days:3}")
     private int messageRetentionDays;
 
+    // How much of the newest history must be in memory before the instance reports ready
+    @Value("${smallchat.hydration.ready-window-minutes:60}")
+    private int readyWindowMinutes;
+
+    @Value("${smallchat.cluster.persist-replicated:false}")
+    private boolean persistReplicated;
+
+    // heap (default) or compact
+    @Value("${smallchat.store.engine:heap}")
+    private String storeEngine;
+
+    // Per-room retention overrides, e.g. "lobby:1,support:30"; other rooms use smallchat.message.retention.days
+    @Value("${smallchat.rooms.retention-days:}")
+    private String roomRetention;
+
+    // Upper bound on shards, since any client can name a new room
+    @Value("${smallchat.rooms.max:1000}")
+    private int maxRooms;
+
+    // Most messages a reconnect sync returns before telling the client to page history instead
+    @Value("${smallchat.sync.max-messages:500}")
+    private int syncMaxMessages;
+
+    // Word index over content and sender per room, for search
+    @Value("${smallchat.search.enabled:true}")
+    private boolean searchEnabled;
+
+    // Matches ranked per query, newest first; bounds query cost however many messages match
+    @Value("${smallchat.search.max-candidates:1000}")
+    private int searchMaxCandidates;
+
+    // Caps on what all rooms hold in memory together; past either, the oldest messages are evicted. 0 = no cap
+    @Value("${smallchat.memory.max-messages:0}")
+    private long maxMessages;
+
+    @Value("${smallchat.memory.max-bytes:0}")
+    private long maxBytes;
+
+    @PostConstruct
+    public void init() {
+        for (String entry : roomRetention.split(",")) {
+            if (entry.isBlank()) continue;
+            int colon = entry.lastIndexOf(':');
+            String room = colon > 0 ? entry.substring(0, colon).trim() : "";
+            if (!ChatMessage.isValidRoom(room)) {
+                throw new IllegalArgumentException("Invalid smallchat.rooms.retention-days entry (expected room:days): " + entry);
+            }
+            roomRetentionDays.put(room, Integer.parseInt(entry.substring(colon + 1).trim()));
+        }
+        roomForWrite(ChatMessage.DEFAULT_ROOM);
+        registerMeters();
+        log.info("Message store engine: {}", isCompact() ? "compact" : "heap");
+        hydrateFromPersistence();
+    }
+
     public void saveMessage(ChatMessage message) {
         // Memory-first
-        messages.put(message.getId(), message);
-        // Persist async if repository is enabled
-        if (repository != null && repository.isEnabled()) {
-            async.submit(() -> {
-                try {
-                    repository.save(message);
-                } catch (Exception e) {
-                    log.warn("Failed to persist message {}: {}", message.getId(), e.getMessage());
+        long start = System.nanoTime();
+        index(message);
+        saveTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        // Persist async (batched write-behind) if repository is enabled
+        writeBehind.enqueue(message);
+    }
+
+    /**
+     * Stores a message that another cluster node originated. That node persists it, so by default it is only
+     * indexed here; set {@code smallchat.cluster.persist-replicated} when nodes do not share storage.
+     */
+    public void saveReplicated(ChatMessage message) {
+        long start = System.nanoTime();
+        index(message);
+        replicatedSaveTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        if (persistReplicated) writeBehind.enqueue(message);
+    }
+
+    /**
+     * Rooms that have held messages since startup, with how many each holds now.
+     */
+    public Map<String, Integer> getRooms() {
+        Map<String, Integer> result = new TreeMap<>();
+        rooms.forEach((id, room) -> result.put(id, room.store.size()));
+        return result;
+    }
+
+    /**
+     * Every message a room holds in memory, oldest first. History evicted for the memory caps is left out, so an
+     * unpaged read never costs more than the caps allow; keyset pages, time ranges and exports read it from storage.
+     */
+    public List<ChatMessage> getAllMessages(String room, boolean includeSystem) {
+        return timedRead("all", () -> {
+            Room r = room(room);
+            if (r == null) return new ArrayList<>();
+            List<ChatMessage> result = new ArrayList<>(r.store.size());
+            scanMemory(r, null, evictedThrough(r), null, false, includeSystem, result::add);
+            return result;
+        });
+    }
+
+    /**
+     * A room's messages strictly between {@code after} and {@code before} (either may be null), oldest first,
+     * optionally only those from {@code sender}. Timestamp keys from {@link #resolveCursor} sort before every message
+     * at their instant, so they give {@code from <= ts < to}. With a sender this reads that sender's index, so the
+     * cost is O(log n + k) in the matches rather than the room. History evicted from memory is read from storage.
+     */
+    public List<ChatMessage> getMessagesBetween(String room, String sender, MessageKey after, MessageKey before,
+                                                boolean includeSystem) {
+        return timedRead("range", () -> {
+            List<ChatMessage> result = new ArrayList<>();
+            Room r = room(room);
+            if (r == null) return result;
+            scan(r, sender, after, before, false, includeSystem, result::add);
+            return result;
+        });
+    }
+
+    /**
+     * Oldest-first iterator over a room's messages strictly between {@code after} and {@code before} (either may be
+     * null). Reads the timeline a page at a time as it is consumed, so memory stays flat however long the range is;
+     * messages saved while iterating may or may not be included. History evicted from memory is read from storage a
+     * window at a time first.
+     */
+    public Iterator<ChatMessage> iterateMessages(String room, MessageKey after, MessageKey before, boolean includeSystem) {
+        Room r = room(room);
+        if (r == null) return Collections.emptyIterator();
+        MessageKey evicted = evictedThrough(r);
+        if (evicted == null) return pagedIterator(List.of(r), after, before, includeSystem);
+        Iterator<List<ChatMessage>> older = evictedPages(r, null, after, before, false, includeSystem);
+        Iterator<ChatMessage> held = pagedIterator(List.of(r), MessageKey.later(after, evicted), before, includeSystem);
+        return new Iterator<>() {
+            private Iterator<ChatMessage> page = Collections.emptyIterator();
+
+            @Override
+            public boolean hasNext() {
+                while (!page.hasNext() && older.hasNext()) page = older.next().iterator();
+                return page.hasNext() || held.hasNext();
+            }
+
+            @Override
+            public ChatMessage next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                return page.hasNext() ? page.next() : held.next();
+            }
+        };
+    }
+
+    /**
+     * Oldest-first slice of a room's in-memory timeline, skipping {@code offset} messages.
+     */
+    public List<ChatMessage> getMessages(String room, int offset, int limit) {
+        return timedRead("offset", () -> {
+            List<ChatMessage> result = new ArrayList<>(Math.min(limit, 1024));
+            Room r = room(room);
+            if (limit <= 0 || r == null) return result;
+            int[] skipped = {0};
+            r.store.scan(null, null, false, true, m -> {
+                if (skipped[0] < offset) {
+                    skipped[0]++;
+                    return true;
                 }
+                result.add(m);
+                return result.size() < limit;
             });
-        }
+            return result;
+        });
     }
 
-    public List<ChatMessage> getAllMessages() {
-        return new ArrayList<>(messages.values())
-                .stream()
-                .sorted((m1, m2) -> m1.getTimestamp().compareTo(m2.getTimestamp()))
-                .collect(Collectors.toList());
+    /**
+     * Keyset page over a room's timeline, or over one sender's messages in it when {@code sender} is set. With
+     * {@code after} set, walks forward from it (bounded by {@code before} if given); otherwise walks back from
+     * {@code before}, or from the newest message. Cost is O(log n + limit) regardless of how far back the cursor is.
+     * Pages reaching past what memory holds continue from storage; their cursors are {@code timestamp@id} keys.
+     */
+    public MessagePage getMessagePage(String room, String sender, MessageKey after, MessageKey before, int limit,
+                                      boolean includeSystem) {
+        return timedRead("page", () -> {
+            boolean forward = after != null;
+            List<ChatMessage> result = new ArrayList<>(Math.min(limit, 1024));
+            Room r = room(room);
+            if (r == null) return new MessagePage(result, null);
+            boolean[] hasMore = {false};
+            scan(r, sender, after, before, !forward, includeSystem, m -> {
+                if (result.size() >= limit) {
+                    hasMore[0] = true;
+                    return false;
+                }
+                result.add(m);
+                return true;
+            });
+            if (!forward) Collections.reverse(result);
+            String nextCursor = null;
+            if (hasMore[0] && !result.isEmpty()) {
+                ChatMessage edge = forward ? result.get(result.size() - 1) : result.get(0);
+                // An evicted message's id no longer resolves, so its whole key is handed out instead
+                nextCursor = r.store.keyOf(edge.getId()) != null ? edge.getId()
+                        : edge.getTimestamp().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME) + "@" + edge.getId();
+            }
+            return new MessagePage(result, nextCursor);
+        });
     }
 
-    public List<ChatMessage> getAllMessages(boolean includeSystem) {
-        return new ArrayList<>(messages.values())
-                .stream()
-                .filter(m -> includeSystem || (m.getType() != ChatMessage.MessageType.JOIN && m.getType() != ChatMessage.MessageType.LEAVE))
-                .sorted((m1, m2) -> m1.getTimestamp().compareTo(m2.getTimestamp()))
-                .collect(Collectors.toList());
+    /**
+     * Turns a cursor into a key on a room's timeline. Accepts a message id from that room, a timestamp
+     * ({@code yyyy-MM-dd HH:mm:ss} or ISO local date-time), which sorts before every message stamped at it, or a
+     * {@code timestamp@id} key as handed out for evicted history.
+     * @return null for a blank cursor
+     * @throws IllegalArgumentException if the cursor is neither a known id nor a timestamp
+     */
+    public MessageKey resolveCursor(String room, String cursor) {
+        if (cursor == null || cursor.isBlank()) return null;
+        Room r = room(room);
+        MessageKey key = r != null ? r.store.keyOf(cursor) : null;
+        if (key == null) key = parseTimestampCursor(cursor);
+        if (key == null) throw new IllegalArgumentException("Unknown cursor: " + cursor);
+        return key;
+    }
+
+    /**
+     * What a reconnecting client missed: the room's messages after {@code since} (the last message id it saw, or a
+     * timestamp), walked forward on the ordered timeline. Reports {@link MessageSync#isTooFarBehind()} instead when
+     * more than {@code smallchat.sync.max-messages} are missing, when {@code since} is older than the room's
+     * retention or than what memory holds, or when it names a message this instance no longer holds.
+     */
+    public MessageSync getMessagesSince(String room, String since, boolean includeSystem) {
+        return timedRead("sync", () -> {
+            if (since == null || since.isBlank()) return MessageSync.tooFarBehind();
+            Room r = room(room);
+            if (r == null) return new MessageSync(List.of(), since, false);
+            MessageKey after = r.store.keyOf(since);
+            if (after == null) {
+                after = parseTimestampCursor(since);
+                if (after == null) return MessageSync.tooFarBehind();
+            }
+            MessageKey evicted = evictedThrough(r);
+            if (after.getTimestamp().isBefore(LocalDateTime.now().minusDays(r.retentionDays))
+                    || (evicted != null && after.compareTo(evicted) < 0)) {
+                return MessageSync.tooFarBehind();
+            }
+            List<ChatMessage> missed = new ArrayList<>();
+            r.store.scan(after, null, false, includeSystem, m -> {
+                missed.add(m);
+                return missed.size() <= syncMaxMessages;
+            });
+            if (missed.size() > syncMaxMessages) return MessageSync.tooFarBehind();
+            String cursor = missed.isEmpty() ? since : missed.get(missed.size() - 1).getId();
+            return new MessageSync(missed, cursor, false);
+        });
     }
 
-    public List<ChatMessage> getRecentMessages(int limit) {
-        return getAllMessages()
-                .stream()
-                .skip(Math.max(0, getAllMessages().size() - limit))
-                .collect(Collectors.toList());
+    public List<ChatMessage> getRecentMessages(String room, int limit, boolean includeSystem) {
+        return timedRead("recent", () -> {
+            List<ChatMessage> result = new ArrayList<>(Math.max(0, Math.min(limit, RECENT_BUFFER_CAPACITY)));
+            Room r = room(room);
+            if (limit <= 0 || r == null) return result;
+            recentInMemory(r, limit, includeSystem, result);
+            if (result.size() < limit && evictedThrough(r) != null) {
+                // Memory ran out before the limit; the rest is evicted history
+                List<ChatMessage> older = new ArrayList<>();
+                MessageKey oldest = result.isEmpty() ? null : MessageKey.of(result.get(0));
+                scanEvicted(r, null, null, oldest, true, includeSystem, m -> {
+                    older.add(m);
+                    return result.size() + older.size() < limit;
+                });
+                Collections.reverse(older);
+                result.addAll(0, older);
+            }
+            return result;
+        });
     }
 
-    public List<ChatMessage> getRecentMessages(int limit, boolean includeSystem) {
-        List<ChatMessage> all = getAllMessages(includeSystem);
-        return all.stream()
-                .skip(Math.max(0, all.size() - limit))
-                .collect(Collectors.toList());
+    private List<ChatMessage> recentInMemory(Room r, int limit, boolean includeSystem, List<ChatMessage> result) {
+        RecentMessageBuffer buffer = (includeSystem ? r.recentAll : r.recentChat).get();
+        if (limit <= buffer.capacity() && buffer.collectNewest(limit, r.store, result)) {
+            // Concurrent writers may publish slightly out of timestamp order; the list is nearly sorted
+            sortNewestFirst(result);
+            if (result.size() < limit) {
+                // Anything older than the ring's floor (e.g. hydrated history) only lives in the timeline
+                r.store.scan(null, buffer.floor(), true, includeSystem, m -> {
+                    result.add(m);
+                    return result.size() < limit;
+                });
+            }
+            Collections.reverse(result);
+            return result;
+        }
+        result.clear();
+        return recentFromTimeline(r, limit, includeSystem, result);
+    }
+
+    /**
+     * Full-text search of a room's chat messages: every word of {@code query} must appear in the content or sender.
+     * Ranked by how often and how distinctive the matched words are, then by recency. Covers what memory holds.
+     * @throws IllegalStateException if {@code smallchat.search.enabled} is off
+     */
+    public SearchResults search(String room, String query, int offset, int limit) {
+        return timedRead("search", () -> {
+            if (!searchEnabled) throw new IllegalStateException("Search is disabled");
+            Room r = room(room);
+            if (r == null) return new SearchResults(query, List.of(), offset, 0);
+            // The index is pruned only by the hourly cleanup, so drop keys evicted or replaced since they were
+            // indexed before paging; otherwise pages overlap and the total counts messages no longer held
+            List<MessageKey> live = new ArrayList<>();
+            for (MessageKey key : r.search.search(query, searchMaxCandidates)) {
+                if (key.equals(r.store.keyOf(key.getId()))) live.add(key);
+            }
+            List<ChatMessage> hits = new ArrayList<>(Math.max(0, Math.min(limit, live.size() - offset)));
+            for (int i = offset; i < live.size() && hits.size() < limit; i++) {
+                ChatMessage m = r.store.get(live.get(i).getId());
+                // Removed between the two lookups
+                if (m != null) hits.add(m);
+            }
+            return new SearchResults(query, hits, offset, live.size());
+        });
+    }
+
+    public ChatMessage getMessage(String id) {
+        if (id == null) return null;
+        for (Room r : rooms.values()) {
+            ChatMessage m = r.store.get(id);
+            if (m != null) return m;
+        }
+        return null;
     }
 
     public int getMessageCount() {
-        return messages.size();
+        int total = 0;
+        for (Room r : rooms.values()) total += r.store.size();
+        return total;
+    }
+
+    public int getMessageCount(String room) {
+        Room r = room(room);
+        return r != null ? r.store.size() : 0;
     }
 
     public void clearAllMessages() {
-        messages.clear();
+        for (Room r : rooms.values()) {
+            // Swap the rings first so a save racing with the clear lands in the new ring
+            r.recentAll.set(newRecentBuffer());
+            r.recentChat.set(newRecentBuffer());
+            r.store.clear();
+            r.senders.clear();
+            if (r.search != null) r.search.clear();
+            r.evictedThrough = null;
+        }
+        changed();
     }
 
-    // Scheduled task to clean up old messages every hour
-    @Scheduled(fixedRate = 3600000) // 1 hour = 3600000 milliseconds
-    public void cleanupOldMessages() {
-        LocalDateTime cutoffTime = LocalDateTime.now().minusDays(messageRetentionDays);
+    /**
+     * Continuous eviction from the oldest end of each room's timeline: messages past the room's retention, then the
+     * oldest messages across all rooms while {@code smallchat.memory.max-messages} or {@code max-bytes} is exceeded.
+     * Each pass only touches the messages it removes. Evicted messages stay readable from storage.
+     */
+    @Scheduled(fixedDelayString = "${smallchat.eviction.interval-ms:1000}",
+            initialDelayString = "${smallchat.eviction.interval-ms:1000}")
+    public void evictMessages() {
+        long start = System.nanoTime();
+        LocalDateTime now = LocalDateTime.now();
+        int expired = 0;
+        for (Room r : rooms.values()) {
+            LocalDateTime cutoff = now.minusDays(r.retentionDays);
+            int n = r.store.removeBefore(cutoff);
+            if (n > 0) {
+                r.senders.removeBefore(cutoff);
+                expired += n;
+            }
+        }
+        expiredCounter.increment(expired);
+        int removed = expired + enforceMemoryCaps();
+        if (removed > 0) changed();
+        evictionTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
 
-        List<String> messagesToRemove = messages.values()
-                .stream()
-                .filter(message -> message.getTimestamp() != null && message.getTimestamp().isBefore(cutoffTime))
-                .map(ChatMessage::getId)
-                .collect(Collectors.toList());
+    /**
+     * Approximate memory all rooms' messages take, in bytes.
+     */
+    public long getEstimatedBytes() {
+        long total = 0;
+        for (Room r : rooms.values()) total += r.store.estimatedBytes();
+        return total;
+    }
 
-        messagesToRemove.forEach(messages::remove);
+    // Storage retention and search index compaction every hour; memory is kept by evictMessages()
+    @Scheduled(fixedRate = 3600000) // 1 hour = 3600000 milliseconds
+    public void cleanupOldMessages() {
+        long start = System.nanoTime();
+        LocalDateTime now = LocalDateTime.now();
+        for (Room r : rooms.values()) {
+            if (r.search == null) continue;
+            LocalDateTime cutoff = now.minusDays(r.retentionDays);
+            MessageKey evicted = evictedThrough(r);
+            // Also drops postings of messages evicted for the memory caps
+            r.search.prune(evicted != null && evicted.getTimestamp().isAfter(cutoff) ? evicted.getTimestamp() : cutoff);
+        }
+        // Storage is not split by room, so it keeps the longest window any room needs
+        LocalDateTime cutoffTime = now.minusDays(maxRetentionDays());
 
         // Clean in Azure as well (best-effort)
         if (repository != null && repository.isEnabled()) {
@@ -116,39 +517,144 @@ public class MessageStorageService {
                 }
             });
         }
+        cleanupTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
 
-        if (!messagesToRemove.isEmpty()) {
-            log.info("Cleaned up {} old messages from memory", messagesToRemove.size());
-        }
+    /**
+     * Store version: increases with every save, load, cleanup or clear in any room.
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * The version qualified by this instance's start time, so it never repeats across restarts. Suitable as an ETag.
+     */
+    public String getVersionTag() {
+        return versionEpoch + "-" + version.get();
+    }
+
+    /**
+     * Wall-clock time of the last version change, in epoch millis.
+     */
+    public long getLastModified() {
+        return lastModified;
     }
 
     public int getMessageRetentionDays() {
         return messageRetentionDays;
     }
 
-    @PostConstruct
+    public int getRetentionDays(String room) {
+        return roomRetentionDays.getOrDefault(room, messageRetentionDays);
+    }
+
+    /**
+     * Starts loading the retention window in the background, newest hour first, so startup never waits on history.
+     * Live traffic is served meanwhile; {@link #isHistoryReady()} reports when the newest window is in memory.
+     */
     public void hydrateFromPersistence() {
         if (repository == null || !repository.isEnabled()) {
             log.info("Skipping hydration: persistence disabled or not configured");
             return;
         }
-        LocalDateTime since = LocalDateTime.now().minusDays(messageRetentionDays);
+        hydrationState = HydrationState.LOADING;
+        Thread t = new Thread(this::runHydration, "msg-hydrate");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    private void runHydration() {
+        long started = System.nanoTime();
+        LocalDateTime since = LocalDateTime.now().minusDays(maxRetentionDays());
+        HistorySink sink = new HistorySink() {
+            @Override
+            public void page(List<ChatMessage> page) {
+                hydratedCount.addAndGet(indexAllIfAbsent(page));
+                // Pages arrive newest first, so once a cap is reached older pages are skipped rather than loaded
+                if (enforceMemoryCaps() > 0) changed();
+            }
+
+            @Override
+            public void covered(LocalDateTime from) {
+                hydratedFrom = from;
+            }
+        };
         try {
-            List<ChatMessage> persisted = repository.loadSince(since);
-            // Sort by timestamp for deterministic insertion order
-            List<ChatMessage> sorted = new ArrayList<>(persisted);
-            Collections.sort(sorted, (a, b) -> a.getTimestamp().compareTo(b.getTimestamp()));
-            for (ChatMessage m : sorted) {
-                if (m.getId() != null) {
-                    messages.put(m.getId(), m);
+            // With a snapshot, storage only has to supply what came after its high-water mark
+            LocalDateTime mark = snapshots.latestHighWaterMark();
+            if (mark != null && mark.isAfter(since)) {
+                repository.streamSince(mark, sink);
+                LocalDateTime restored = snapshots.restoreLatest(since, sink);
+                if (restored != null && !restored.isBefore(mark)) {
+                    sink.covered(since);
+                } else {
+                    log.warn("Snapshot unusable, hydrating the rest of the window from storage");
+                    repository.streamSince(since, sink);
                 }
+            } else {
+                repository.streamSince(since, sink);
+            }
+            hydrationState = HydrationState.READY;
+            hydrationTimer("success").record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+            // History arrived newest page first; put the search ordinals back in time order
+            LocalDateTime now = LocalDateTime.now();
+            for (Room r : rooms.values()) {
+                if (r.search != null) r.search.prune(now.minusDays(r.retentionDays));
             }
-            log.info("Hydrated {} messages from Azure", sorted.size());
+            log.info("Hydrated {} messages in {} ms", hydratedCount.get(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        } catch (Exception e) {
+            hydrationState = HydrationState.FAILED;
+            hydrationTimer("error").record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+            log.warn("Failed to hydrate from storage: {}. Continuing with {} messages loaded.", e.getMessage(), hydratedCount.get());
+        }
+    }
+
+    /**
+     * Writes the store to a snapshot so the next start only streams what came after it from storage.
+     * Skipped until hydration has finished, since a partial store would hide history behind the high-water mark.
+     */
+    @Scheduled(fixedDelayString = "${smallchat.snapshot.interval-ms:600000}",
+            initialDelayString = "${smallchat.snapshot.interval-ms:600000}")
+    public void writeSnapshot() {
+        if (!snapshots.isEnabled() || hydrationState != HydrationState.READY) return;
+        // Leave slack for messages stamped just before the snapshot but indexed during it
+        LocalDateTime mark = LocalDateTime.now().minus(SNAPSHOT_SLACK);
+        try {
+            snapshots.write(this::snapshotIterator, mark);
         } catch (Exception e) {
-            log.warn("Failed to hydrate from Azure: {}. Continuing with empty memory.", e.getMessage());
+            log.warn("Snapshot failed: {}", e.getMessage());
         }
     }
 
+    // A fresh snapshot on the way down keeps the next start's storage catch-up to about a minute
+    @PreDestroy
+    public void snapshotOnShutdown() {
+        writeSnapshot();
+    }
+
+    /**
+     * True once the newest {@code ready-window-minutes} of history is in memory, or hydration is not running.
+     */
+    public boolean isHistoryReady() {
+        if (hydrationState != HydrationState.LOADING) return true;
+        LocalDateTime from = hydratedFrom;
+        return from != null && !from.isAfter(LocalDateTime.now().minusMinutes(readyWindowMinutes));
+    }
+
+    public HydrationState getHydrationState() {
+        return hydrationState;
+    }
+
+    public int getHydratedCount() {
+        return hydratedCount.get();
+    }
+
+    public LocalDateTime getHydratedFrom() {
+        return hydratedFrom;
+    }
+
     /**
      * Clear in-memory messages and reload from Azure Table within retention window.
      * @return number of messages loaded
@@ -158,22 +664,461 @@ public class MessageStorageService {
             log.info("Reload requested but persistence is disabled");
             return 0;
         }
-        messages.clear();
-        LocalDateTime since = LocalDateTime.now().minusDays(messageRetentionDays);
+        clearAllMessages();
+        LocalDateTime since = LocalDateTime.now().minusDays(maxRetentionDays());
         try {
             List<ChatMessage> persisted = repository.loadSince(since);
-            List<ChatMessage> sorted = new ArrayList<>(persisted);
-            Collections.sort(sorted, (a, b) -> a.getTimestamp().compareTo(b.getTimestamp()));
-            for (ChatMessage m : sorted) {
-                if (m.getId() != null) {
-                    messages.put(m.getId(), m);
-                }
-            }
-            log.info("Reloaded {} messages from Azure", sorted.size());
-            return sorted.size();
+            // Never replace a message saved live since the clear
+            indexAllIfAbsent(persisted);
+            if (enforceMemoryCaps() > 0) changed();
+            log.info("Reloaded {} messages from Azure", persisted.size());
+            return persisted.size();
         } catch (Exception e) {
             log.warn("Reload from Azure failed: {}", e.getMessage());
             return 0;
         }
     }
+
+    private void index(ChatMessage message) {
+        if (message.getId() == null) message.setId(UUID.randomUUID().toString());
+        if (message.getTimestamp() == null) message.setTimestamp(LocalDateTime.now());
+        Room r = roomForWrite(message.getRoom());
+        // The caller's object goes on to be broadcast and persisted, so the store's form is indexed instead
+        ChatMessage stored = r.store.normalize(message);
+        long stamp = r.store.put(stored);
+        r.recentAll.get().add(stored, stamp);
+        if (!isSystem(stored)) r.recentChat.get().add(stored, stamp);
+        r.senders.add(stored);
+        if (r.search != null) r.search.add(stored);
+        changed();
+    }
+
+    // Bulk loads must not clobber a newer in-memory copy of the same message
+    private int indexAllIfAbsent(List<ChatMessage> loaded) {
+        Map<String, List<ChatMessage>> byRoom = new HashMap<>();
+        for (ChatMessage m : loaded) {
+            if (m.getId() == null) continue;
+            if (m.getTimestamp() == null) m.setTimestamp(LocalDateTime.now());
+            byRoom.computeIfAbsent(m.getRoom(), k -> new ArrayList<>()).add(m);
+        }
+        LocalDateTime now = LocalDateTime.now();
+        int added = 0;
+        for (Map.Entry<String, List<ChatMessage>> e : byRoom.entrySet()) {
+            Room r;
+            try {
+                r = roomForWrite(e.getKey());
+            } catch (IllegalArgumentException ex) {
+                log.warn("Skipping {} loaded messages: {}", e.getValue().size(), ex.getMessage());
+                continue;
+            }
+            // Storage holds the longest retention window; drop what this room no longer keeps or has evicted
+            LocalDateTime cutoff = now.minusDays(r.retentionDays);
+            MessageKey evicted = evictedThrough(r);
+            List<ChatMessage> batch = e.getValue();
+            batch.replaceAll(r.store::normalize);
+            batch.removeIf(m -> m.getTimestamp().isBefore(cutoff) || r.store.keyOf(m.getId()) != null
+                    || (evicted != null && m.getTimestamp().isBefore(evictedUntil(evicted))));
+            added += r.store.putAllIfAbsent(batch);
+            batch.forEach(r.senders::add);
+            if (r.search != null) batch.forEach(r.search::add);
+        }
+        if (added > 0) changed();
+        return added;
+    }
+
+    private void registerMeters() {
+        saveTimer = saveTimer("local");
+        replicatedSaveTimer = saveTimer("replicated");
+        evictionTimer = Timer.builder("smallchat.store.eviction")
+                .description("Duration of one eviction pass over all rooms")
+                .register(meterRegistry);
+        cleanupTimer = Timer.builder("smallchat.store.cleanup")
+                .description("Duration of the hourly search compaction; the storage delete it starts is timed by the repository")
+                .register(meterRegistry);
+        expiredCounter = evictedCounter("retention");
+        overCapCounter = evictedCounter("memory-cap");
+        Gauge.builder("smallchat.store.messages", this, MessageStorageService::getMessageCount)
+                .description("Messages held in memory across all rooms")
+                .register(meterRegistry);
+        Gauge.builder("smallchat.store.bytes", this, MessageStorageService::getEstimatedBytes)
+                .description("Estimated memory the held messages take, on and off heap")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("smallchat.store.rooms", rooms, Map::size)
+                .description("Rooms with an in-memory shard")
+                .register(meterRegistry);
+        Gauge.builder("smallchat.hydration.messages", hydratedCount, AtomicInteger::get)
+                .description("Messages loaded from storage or a snapshot by the running or last hydration")
+                .register(meterRegistry);
+    }
+
+    private Timer saveTimer(String origin) {
+        return Timer.builder("smallchat.store.save")
+                .description("Time to index a message in memory; persistence happens behind it")
+                .tag("origin", origin)
+                .register(meterRegistry);
+    }
+
+    private Counter evictedCounter(String reason) {
+        return Counter.builder("smallchat.store.evicted")
+                .description("Messages evicted from memory")
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+
+    private Timer hydrationTimer(String outcome) {
+        return Timer.builder("smallchat.hydration")
+                .description("Time from start to end of loading history into memory")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    private <T> T timedRead(String op, Supplier<T> read) {
+        return readTimers.computeIfAbsent(op, o -> Timer.builder("smallchat.store.read")
+                .description("Time to answer a history read, including any part loaded from storage")
+                .tag("op", o)
+                .register(meterRegistry)).record(read);
+    }
+
+    private void changed() {
+        lastModified = System.currentTimeMillis();
+        version.incrementAndGet();
+    }
+
+    private Room room(String id) {
+        return rooms.get(id != null ? id : ChatMessage.DEFAULT_ROOM);
+    }
+
+    private Room roomForWrite(String id) {
+        String key = id != null ? id : ChatMessage.DEFAULT_ROOM;
+        Room r = rooms.get(key);
+        if (r != null) return r;
+        if (!ChatMessage.isValidRoom(key)) throw new IllegalArgumentException("Invalid room: " + key);
+        if (rooms.size() >= maxRooms) throw new IllegalArgumentException("Room limit reached (" + maxRooms + ")");
+        return rooms.computeIfAbsent(key, Room::new);
+    }
+
+    /**
+     * Evicts the oldest messages across all rooms until both memory caps are met, at most one batch per step, and
+     * never past another room's oldest message, so eviction order is global. Returns how many were removed.
+     */
+    private int enforceMemoryCaps() {
+        if (maxMessages <= 0 && maxBytes <= 0) return 0;
+        synchronized (evictionLock) {
+            int removed = 0;
+            while (true) {
+                long count = getMessageCount();
+                long bytes = getEstimatedBytes();
+                long excess = 0;
+                if (maxMessages > 0) excess = Math.max(excess, count - maxMessages);
+                if (maxBytes > 0 && bytes > maxBytes && count > 0) {
+                    long perMessage = Math.max(1, bytes / count);
+                    excess = Math.max(excess, (bytes - maxBytes + perMessage - 1) / perMessage);
+                }
+                if (excess <= 0) break;
+                Room oldest = null;
+                MessageKey oldestKey = null;
+                MessageKey runnerUp = null;
+                for (Room r : rooms.values()) {
+                    MessageKey k = oldestKey(r);
+                    if (k == null) continue;
+                    if (oldestKey == null || k.compareTo(oldestKey) < 0) {
+                        runnerUp = oldestKey;
+                        oldest = r;
+                        oldestKey = k;
+                    } else if (runnerUp == null || k.compareTo(runnerUp) < 0) {
+                        runnerUp = k;
+                    }
+                }
+                if (oldest == null) break;
+                int wanted = (int) Math.min(excess, EVICTION_BATCH);
+                int batch = wanted;
+                if (runnerUp != null) {
+                    int[] older = {0};
+                    oldest.store.scan(null, runnerUp, false, true, m -> ++older[0] < wanted);
+                    batch = Math.max(1, older[0]);
+                }
+                MessageKey last = oldest.store.removeOldest(batch);
+                if (last == null) break;
+                oldest.senders.removeThrough(last);
+                oldest.evictedThrough = MessageKey.later(oldest.evictedThrough, last);
+                removed += batch;
+            }
+            if (removed > 0) {
+                overCapCounter.increment(removed);
+                log.debug("Evicted {} messages to stay within the memory caps", removed);
+            }
+            return removed;
+        }
+    }
+
+    private static MessageKey oldestKey(Room r) {
+        MessageKey[] first = {null};
+        r.store.scan(null, null, false, true, m -> {
+            first[0] = MessageKey.of(m);
+            return false;
+        });
+        return first[0];
+    }
+
+    // Newest key evicted for the memory caps, or null when the room's memory still holds everything, or nothing
+    // evicted can be read back
+    private MessageKey evictedThrough(Room r) {
+        return repository != null && repository.isEnabled() ? r.evictedThrough : null;
+    }
+
+    // The room's timeline, or with a sender that sender's index resolved against the store, plus evicted history
+    // from storage on the older side
+    private void scan(Room r, String sender, MessageKey after, MessageKey before, boolean descending,
+                      boolean includeSystem, Predicate<ChatMessage> visitor) {
+        MessageKey evicted = evictedThrough(r);
+        if (evicted == null) {
+            scanMemory(r, sender, after, before, descending, includeSystem, visitor);
+            return;
+        }
+        boolean[] stopped = {false};
+        Predicate<ChatMessage> tracking = m -> {
+            if (visitor.test(m)) return true;
+            stopped[0] = true;
+            return false;
+        };
+        if (!descending) scanEvicted(r, sender, after, before, false, includeSystem, tracking);
+        if (stopped[0]) return;
+        scanMemory(r, sender, MessageKey.later(after, evicted), before, descending, includeSystem, tracking);
+        if (descending && !stopped[0]) scanEvicted(r, sender, after, before, true, includeSystem, tracking);
+    }
+
+    private void scanMemory(Room r, String sender, MessageKey after, MessageKey before, boolean descending,
+                            boolean includeSystem, Predicate<ChatMessage> visitor) {
+        if (after != null && before != null && after.compareTo(before) >= 0) return;
+        if (sender == null) {
+            r.store.scan(after, before, descending, includeSystem, visitor);
+            return;
+        }
+        NavigableSet<MessageKey> keys = r.senders.range(sender, after, before);
+        for (MessageKey key : descending ? keys.descendingSet() : keys) {
+            ChatMessage m = r.store.get(key.getId());
+            // Removed from the store, or re-saved under another timestamp, since it was indexed
+            if (m == null || !key.equals(MessageKey.of(m)) || (!includeSystem && isSystem(m))) continue;
+            if (!visitor.test(m)) return;
+        }
+    }
+
+    private void scanEvicted(Room r, String sender, MessageKey after, MessageKey before, boolean descending,
+                             boolean includeSystem, Predicate<ChatMessage> visitor) {
+        Iterator<List<ChatMessage>> pages = evictedPages(r, sender, after, before, descending, includeSystem);
+        while (pages.hasNext()) {
+            for (ChatMessage m : pages.next()) {
+                if (!visitor.test(m)) return;
+            }
+        }
+    }
+
+    /**
+     * A room's evicted history strictly between {@code after} and {@code before}, read from storage in time windows
+     * walked from one end: an hour first, doubling up to a day, so a short page costs one small query. Each window
+     * comes back sorted in walk order; a window with no matches is an empty list.
+     */
+    private Iterator<List<ChatMessage>> evictedPages(Room r, String sender, MessageKey after, MessageKey before,
+                                                     boolean descending, boolean includeSystem) {
+        MessageKey evicted = evictedThrough(r);
+        if (evicted == null) return Collections.emptyIterator();
+        LocalDateTime retained = LocalDateTime.now().minusDays(r.retentionDays);
+        LocalDateTime low = after != null && after.getTimestamp().isAfter(retained) ? after.getTimestamp() : retained;
+        // Storage ranges have an exclusive end; keys refine them below
+        LocalDateTime high = before != null && before.getTimestamp().isBefore(evictedUntil(evicted))
+                ? before.getTimestamp().plusNanos(1_000_000)
+                : evictedUntil(evicted);
+        String normalizedSender = sender != null ? sender.trim().toLowerCase(Locale.ROOT) : null;
+        Predicate<ChatMessage> wanted = m -> {
+            if (m.getId() == null || m.getTimestamp() == null) return false;
+            if (!r.id.equals(m.getRoom() != null ? m.getRoom() : ChatMessage.DEFAULT_ROOM)) return false;
+            // Storage may keep coarser timestamps, so a message memory still holds can fall in range here too
+            if (r.store.keyOf(m.getId()) != null) return false;
+            if (!includeSystem && isSystem(m)) return false;
+            if (normalizedSender != null
+                    && (m.getSender() == null || !normalizedSender.equals(m.getSender().trim().toLowerCase(Locale.ROOT)))) {
+                return false;
+            }
+            MessageKey key = MessageKey.of(m);
+            return (after == null || key.compareTo(after) > 0) && (before == null || key.compareTo(before) < 0);
+        };
+        Comparator<ChatMessage> order = descending
+                ? (a, b) -> compareByKey(b, a)
+                : MessageStorageService::compareByKey;
+        return new Iterator<>() {
+            private LocalDateTime from = low;
+            private LocalDateTime to = high;
+            private Duration window = EVICTED_WINDOW;
+
+            @Override
+            public boolean hasNext() {
+                return from.isBefore(to);
+            }
+
+            @Override
+            public List<ChatMessage> next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                LocalDateTime start = descending ? later(from, to.minus(window)) : from;
+                LocalDateTime end = descending ? to : earlier(to, from.plus(window));
+                if (window.compareTo(MAX_EVICTED_WINDOW) < 0) window = window.multipliedBy(2);
+                if (descending) to = start; else from = end;
+                List<ChatMessage> page;
+                try {
+                    page = repository.loadBetween(start, end);
+                } catch (Exception e) {
+                    throw new IllegalStateException("Failed to read evicted history: " + e.getMessage(), e);
+                }
+                page.removeIf(wanted.negate());
+                page.sort(order);
+                return page;
+            }
+        };
+    }
+
+    // Storage and the compact engine may keep timestamps at different precisions, so the evicted range is taken to the
+    // end of the last evicted key's millisecond; anything memory still holds is told apart by id
+    private static LocalDateTime evictedUntil(MessageKey evicted) {
+        return evicted.getTimestamp().truncatedTo(ChronoUnit.MILLIS).plusNanos(1_000_000);
+    }
+
+    private static LocalDateTime later(LocalDateTime a, LocalDateTime b) {
+        return a.isAfter(b) ? a : b;
+    }
+
+    private static LocalDateTime earlier(LocalDateTime a, LocalDateTime b) {
+        return a.isBefore(b) ? a : b;
+    }
+
+    private static MessageKey parseTimestampCursor(String cursor) {
+        String trimmed = cursor.trim();
+        int at = trimmed.lastIndexOf('@');
+        String id = at > 0 ? trimmed.substring(at + 1) : null;
+        if (at > 0) trimmed = trimmed.substring(0, at);
+        for (DateTimeFormatter f : CURSOR_FORMATS) {
+            try {
+                LocalDateTime ts = LocalDateTime.parse(trimmed, f);
+                return id != null && !id.isEmpty() ? new MessageKey(ts, id) : MessageKey.lowest(ts);
+            } catch (DateTimeParseException ignored) {
+                // try next format
+            }
+        }
+        return null;
+    }
+
+    private int maxRetentionDays() {
+        int max = messageRetentionDays;
+        for (int days : roomRetentionDays.values()) max = Math.max(max, days);
+        return max;
+    }
+
+    private boolean isCompact() {
+        return "compact".equalsIgnoreCase(storeEngine.trim());
+    }
+
+    /**
+     * One room's shard: its own store, with its own lock or lock-free structures, plus tail caches fed by saves
+     * so /messages/recent never has to touch the timeline.
+     */
+    private final class Room {
+        final String id;
+        // Lookup by id plus a timeline ordered by (timestamp, id); reads walk the timeline instead of sorting
+        final MessageStore store;
+        final AtomicReference<RecentMessageBuffer> recentAll = new AtomicReference<>(newRecentBuffer());
+        final AtomicReference<RecentMessageBuffer> recentChat = new AtomicReference<>(newRecentBuffer());
+        final SenderIndex senders = new SenderIndex();
+        final SearchIndex search;
+        final int retentionDays;
+        // Newest key evicted for the memory caps; older history of this room is only in storage
+        volatile MessageKey evictedThrough;
+
+        Room(String id) {
+            this.id = id;
+            this.store = isCompact() ? new CompactMessageStore(id) : new HeapMessageStore();
+            this.search = searchEnabled ? new SearchIndex() : null;
+            this.retentionDays = getRetentionDays(id);
+        }
+    }
+
+    // Walks every room's timeline a page at a time, so a long write (e.g. a snapshot) never pins a store
+    private Iterator<ChatMessage> snapshotIterator() {
+        return pagedIterator(new ArrayList<>(rooms.values()), null, null, true);
+    }
+
+    // Walks the shards in turn, a page per scan, so no store lock or large list is held between pages
+    private static Iterator<ChatMessage> pagedIterator(List<Room> rooms, MessageKey after, MessageKey before,
+                                                       boolean includeSystem) {
+        Iterator<Room> shards = rooms.iterator();
+        return new Iterator<>() {
+            private Room current;
+            private List<ChatMessage> page = List.of();
+            private int pos;
+            private MessageKey last;
+            private boolean done = true;
+
+            @Override
+            public boolean hasNext() {
+                while (pos >= page.size()) {
+                    if (done) {
+                        if (!shards.hasNext()) return false;
+                        current = shards.next();
+                        last = after;
+                        done = false;
+                    }
+                    List<ChatMessage> next = new ArrayList<>(ITERATION_PAGE_SIZE);
+                    current.store.scan(last, before, false, includeSystem, m -> {
+                        next.add(m);
+                        return next.size() < ITERATION_PAGE_SIZE;
+                    });
+                    done = next.size() < ITERATION_PAGE_SIZE;
+                    page = next;
+                    pos = 0;
+                    if (!next.isEmpty()) last = MessageKey.of(next.get(next.size() - 1));
+                }
+                return true;
+            }
+
+            @Override
+            public ChatMessage next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                return page.get(pos++);
+            }
+        };
+    }
+
+    private List<ChatMessage> recentFromTimeline(Room room, int limit, boolean includeSystem, List<ChatMessage> out) {
+        // Walk newest-first and stop as soon as we have enough
+        room.store.scan(null, null, true, includeSystem, m -> {
+            out.add(m);
+            return out.size() < limit;
+        });
+        Collections.reverse(out);
+        return out;
+    }
+
+    private static RecentMessageBuffer newRecentBuffer() {
+        return new RecentMessageBuffer(RECENT_BUFFER_CAPACITY, MessageKey.lowest(LocalDateTime.now()));
+    }
+
+    // Insertion sort: linear on the nearly sorted lists the rings hand back, and allocation-free
+    private static void sortNewestFirst(List<ChatMessage> list) {
+        for (int i = 1; i < list.size(); i++) {
+            ChatMessage current = list.get(i);
+            int j = i - 1;
+            while (j >= 0 && compareByKey(list.get(j), current) < 0) {
+                list.set(j + 1, list.get(j));
+                j--;
+            }
+            list.set(j + 1, current);
+        }
+    }
+
+    private static int compareByKey(ChatMessage a, ChatMessage b) {
+        int c = a.getTimestamp().compareTo(b.getTimestamp());
+        return c != 0 ? c : a.getId().compareTo(b.getId());
+    }
+
+    private static boolean isSystem(ChatMessage m) {
+        return MessageStore.isSystem(m.getType());
+    }
 }
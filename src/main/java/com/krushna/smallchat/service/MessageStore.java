@@ -0,0 +1,86 @@
+package com.krushna.smallchat.service;
+
+import com.krushna.smallchat.model.ChatMessage;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * In-memory message index behind {@link MessageStorageService}: lookup by id plus a timeline ordered by {@link MessageKey}.
+ * Selected with {@code smallchat.store.engine}.
+ */
+interface MessageStore {
+
+    /**
+     * The message as this store would hand it back from a read, for keying the secondary indexes the same way.
+     * Never modifies {@code message}; returns it as-is when the store keeps it unchanged.
+     */
+    default ChatMessage normalize(ChatMessage message) {
+        return message;
+    }
+
+    /**
+     * Inserts the message, replacing any stored message with the same id.
+     * @return a stamp identifying this write, for {@link #isLive}
+     */
+    long put(ChatMessage message);
+
+    /**
+     * Inserts the message unless its id is already stored.
+     * @return true if it was inserted
+     */
+    boolean putIfAbsent(ChatMessage message);
+
+    /**
+     * Bulk {@link #putIfAbsent}, for hydration and reloads.
+     * @return number of messages inserted
+     */
+    default int putAllIfAbsent(List<ChatMessage> messages) {
+        int added = 0;
+        for (ChatMessage m : messages) {
+            if (putIfAbsent(m)) added++;
+        }
+        return added;
+    }
+
+    ChatMessage get(String id);
+
+    MessageKey keyOf(String id);
+
+    /**
+     * True if {@code message}, as returned by the {@link #put} that produced {@code stamp}, is still the stored version.
+     */
+    boolean isLive(ChatMessage message, long stamp);
+
+    /**
+     * Visits messages strictly between {@code after} and {@code before} (either may be null for an open end),
+     * in key order or reversed, until {@code visitor} returns false.
+     */
+    void scan(MessageKey after, MessageKey before, boolean descending, boolean includeSystem, Predicate<ChatMessage> visitor);
+
+    /**
+     * Removes every message stamped before {@code cutoff}.
+     * @return number removed
+     */
+    int removeBefore(LocalDateTime cutoff);
+
+    /**
+     * Removes up to {@code max} of the oldest messages.
+     * @return key of the newest message removed, or null if none were
+     */
+    MessageKey removeOldest(int max);
+
+    /**
+     * Approximate memory the stored messages take, in bytes, on and off the heap.
+     */
+    long estimatedBytes();
+
+    int size();
+
+    void clear();
+
+    static boolean isSystem(ChatMessage.MessageType type) {
+        return type == ChatMessage.MessageType.JOIN || type == ChatMessage.MessageType.LEAVE;
+    }
+}
@@ -0,0 +1,73 @@
+package com.krushna.smallchat.service;
+
+import com.krushna.smallchat.model.ChatMessage;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Lock-free, fixed-size ring of the most recently saved messages.
+ * Writers claim a sequence number and publish into its slot; readers walk back from the newest sequence.
+ * The ring only takes messages at or above its floor (the moment it was created), so anything older,
+ * such as history hydrated in the background, is found below the floor in the timeline instead.
+ * The store stays the source of truth: a slot only counts if the store still holds that write of the message
+ * (see {@link MessageStore#isLive}), so retention cleanup and clears never need to touch the ring.
+ */
+final class RecentMessageBuffer {
+
+    private static final class Slot {
+        final long seq;
+        final ChatMessage message;
+        final long stamp;
+
+        Slot(long seq, ChatMessage message, long stamp) {
+            this.seq = seq;
+            this.message = message;
+            this.stamp = stamp;
+        }
+    }
+
+    private final AtomicReferenceArray<Slot> slots;
+    private final int mask;
+    private final AtomicLong next = new AtomicLong();
+    private final MessageKey floor;
+
+    RecentMessageBuffer(int capacity, MessageKey floor) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+        this.floor = floor;
+    }
+
+    int capacity() {
+        return slots.length();
+    }
+
+    MessageKey floor() {
+        return floor;
+    }
+
+    void add(ChatMessage message, long stamp) {
+        if (MessageKey.of(message).compareTo(floor) < 0) return;
+        long seq = next.getAndIncrement();
+        slots.set((int) (seq & mask), new Slot(seq, message, stamp));
+    }
+
+    /**
+     * Appends up to {@code limit} live messages to {@code out}, newest first.
+     * @return false if the ring has wrapped past what it could return, so messages above the floor may be missing
+     *         and the caller must fall back to the index
+     */
+    boolean collectNewest(int limit, MessageStore store, List<ChatMessage> out) {
+        long end = next.get();
+        long start = Math.max(0, end - slots.length());
+        for (long seq = end - 1; seq >= start && out.size() < limit; seq--) {
+            Slot s = slots.get((int) (seq & mask));
+            // Null or older sequence: writer still publishing. Newer sequence: slot already lapped.
+            if (s == null || s.seq != seq) continue;
+            if (store.isLive(s.message, s.stamp)) out.add(s.message);
+        }
+        return out.size() >= limit || start == 0;
+    }
+}
@@ -0,0 +1,263 @@
+package com.krushna.smallchat.service;
+
+import com.krushna.smallchat.model.ChatMessage;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Inverted index over one room's chat messages. Each indexed message gets an ordinal, and each lower-cased word of
+ * {@code content} and {@code sender} maps to an ascending array of the ordinals containing it, with a weight per
+ * entry (occurrences in the content, plus {@link #SENDER_WEIGHT} for a sender match). System messages are not indexed.
+ * <p>
+ * A query matches messages containing every term. The rarest term's postings are walked from the highest ordinal down
+ * while the others are galloped in step, stopping after {@code maxCandidates} matches. Candidates are ranked by the
+ * sum of their term weights scaled by each term's inverse document frequency, newest first on ties.
+ * <p>
+ * Writers are serialized; readers take no lock. Postings are append-only arrays published before their length, so a
+ * reader always sees a consistent prefix. {@link #prune} rebuilds the index in timeline order and swaps it in, which
+ * also restores time order to ordinals after out-of-order loads such as hydration.
+ */
+final class SearchIndex {
+
+    static final int SENDER_WEIGHT = 3;
+    private static final int MIN_TOKEN_LENGTH = 2;
+    private static final int MAX_TOKEN_LENGTH = 32;
+    private static final int MAX_QUERY_TERMS = 8;
+
+    private volatile Segment current = new Segment();
+
+    /**
+     * Indexes a message the store has just taken. Callers skip messages it already held.
+     */
+    synchronized void add(ChatMessage message) {
+        current.add(message);
+    }
+
+    /**
+     * Drops messages stamped before {@code cutoff} and renumbers the rest in timeline order.
+     */
+    synchronized void prune(LocalDateTime cutoff) {
+        Segment old = current;
+        MessageKey bound = MessageKey.lowest(cutoff);
+        int n = old.docCount;
+        MessageKey[] docs = old.docs;
+        Integer[] survivors = new Integer[n];
+        int kept = 0;
+        for (int ord = 0; ord < n; ord++) {
+            if (docs[ord] != null && docs[ord].compareTo(bound) >= 0) survivors[kept++] = ord;
+        }
+        Arrays.sort(survivors, 0, kept, (a, b) -> docs[a].compareTo(docs[b]));
+        int[] renumbered = new int[n];
+        Arrays.fill(renumbered, -1);
+        Segment next = new Segment();
+        MessageKey previous = null;
+        for (int i = 0; i < kept; i++) {
+            MessageKey key = docs[survivors[i]];
+            // A message indexed twice keeps one ordinal
+            renumbered[survivors[i]] = key.equals(previous) ? next.docCount - 1 : next.appendDoc(key);
+            previous = key;
+        }
+        for (Map.Entry<String, Postings> e : old.terms.entrySet()) {
+            Postings p = e.getValue();
+            int size = p.size;
+            long[] packed = new long[size];
+            int m = 0;
+            for (int i = 0; i < size; i++) {
+                int ord = renumbered[p.ords[i]];
+                if (ord >= 0) packed[m++] = ((long) ord << 8) | (p.weights[i] & 0xFF);
+            }
+            if (m == 0) continue;
+            Arrays.sort(packed, 0, m);
+            int[] ords = new int[m];
+            byte[] weights = new byte[m];
+            int unique = 0;
+            for (int i = 0; i < m; i++) {
+                int ord = (int) (packed[i] >>> 8);
+                if (unique > 0 && ords[unique - 1] == ord) continue;
+                ords[unique] = ord;
+                weights[unique++] = (byte) packed[i];
+            }
+            next.terms.put(e.getKey(), new Postings(ords, weights, unique));
+        }
+        current = next;
+    }
+
+    synchronized void clear() {
+        current = new Segment();
+    }
+
+    /**
+     * Keys of the newest {@code maxCandidates} messages matching {@code query}, best first.
+     */
+    List<MessageKey> search(String query, int maxCandidates) {
+        List<String> queryTerms = new ArrayList<>(new LinkedHashSet<>(tokenize(query)));
+        if (queryTerms.isEmpty()) return List.of();
+        if (queryTerms.size() > MAX_QUERY_TERMS) queryTerms = queryTerms.subList(0, MAX_QUERY_TERMS);
+
+        Segment segment = current;
+        int k = queryTerms.size();
+        int[] sizes = new int[k];
+        int[][] ords = new int[k][];
+        byte[][] weights = new byte[k][];
+        for (int i = 0; i < k; i++) {
+            Postings p = segment.terms.get(queryTerms.get(i));
+            if (p == null) return List.of();
+            // Length first: arrays read after it hold at least that many entries
+            sizes[i] = p.size;
+            ords[i] = p.ords;
+            weights[i] = p.weights;
+        }
+        Integer[] order = new Integer[k];
+        for (int i = 0; i < k; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> Integer.compare(sizes[a], sizes[b]));
+        double docs = Math.max(1, segment.docCount);
+        double[] idf = new double[k];
+        for (int i = 0; i < k; i++) idf[i] = Math.log(1 + docs / Math.max(1, sizes[i]));
+
+        int lead = order[0];
+        int[] pos = new int[k];
+        for (int i = 0; i < k; i++) pos[i] = sizes[i] - 1;
+        MessageKey[] keys = segment.docs;
+        List<Scored> candidates = new ArrayList<>(Math.min(maxCandidates, sizes[lead]));
+        Set<MessageKey> seen = new HashSet<>();
+        walk:
+        for (int i = sizes[lead] - 1; i >= 0 && candidates.size() < maxCandidates; i--) {
+            int ord = ords[lead][i];
+            double score = weights[lead][i] * idf[lead];
+            for (int j = 1; j < k; j++) {
+                int t = order[j];
+                int at = gallopDown(ords[t], pos[t], ord);
+                if (at < 0) break walk;
+                pos[t] = at;
+                if (ords[t][at] != ord) continue walk;
+                score += weights[t][at] * idf[t];
+            }
+            MessageKey key = keys[ord];
+            if (seen.add(key)) candidates.add(new Scored(key, score));
+        }
+        candidates.sort((a, b) -> {
+            int c = Double.compare(b.score, a.score);
+            return c != 0 ? c : b.key.compareTo(a.key);
+        });
+        List<MessageKey> result = new ArrayList<>(candidates.size());
+        for (Scored s : candidates) result.add(s.key);
+        return result;
+    }
+
+    // Lower-cased runs of letters and digits, in order and with repeats
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) return tokens;
+        String lower = text.toLowerCase(Locale.ROOT);
+        int start = -1;
+        for (int i = 0; i <= lower.length(); i++) {
+            boolean word = i < lower.length() && Character.isLetterOrDigit(lower.charAt(i));
+            if (word && start < 0) {
+                start = i;
+            } else if (!word && start >= 0) {
+                int len = i - start;
+                if (len >= MIN_TOKEN_LENGTH && len <= MAX_TOKEN_LENGTH) tokens.add(lower.substring(start, i));
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    // Highest index at or below from whose ordinal is <= target, or -1
+    private static int gallopDown(int[] ords, int from, int target) {
+        if (from < 0 || ords[from] <= target) return from;
+        int hi = from;
+        int step = 1;
+        int lo = from - step;
+        while (lo >= 0 && ords[lo] > target) {
+            hi = lo;
+            step <<= 1;
+            lo = from - step;
+        }
+        lo = Math.max(lo, -1);
+        while (hi - lo > 1) {
+            int mid = (lo + hi) >>> 1;
+            if (ords[mid] <= target) lo = mid; else hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * One generation of the index, written only under the owning {@link SearchIndex}'s lock.
+     */
+    private static final class Segment {
+        final Map<String, Postings> terms = new ConcurrentHashMap<>();
+        volatile MessageKey[] docs = new MessageKey[1024];
+        volatile int docCount;
+
+        void add(ChatMessage message) {
+            if (MessageStore.isSystem(message.getType())) return;
+            Map<String, Integer> counts = new HashMap<>();
+            for (String t : tokenize(message.getContent())) counts.merge(t, 1, Integer::sum);
+            for (String t : tokenize(message.getSender())) counts.merge(t, SENDER_WEIGHT, Integer::sum);
+            if (counts.isEmpty()) return;
+            int ord = appendDoc(MessageKey.of(message));
+            counts.forEach((term, count) -> {
+                byte weight = (byte) Math.min(count, Byte.MAX_VALUE);
+                Postings p = terms.get(term);
+                if (p == null) {
+                    terms.put(term, new Postings(new int[]{ord}, new byte[]{weight}, 1));
+                } else {
+                    p.append(ord, weight);
+                }
+            });
+        }
+
+        int appendDoc(MessageKey key) {
+            int n = docCount;
+            MessageKey[] d = docs;
+            if (n == d.length) {
+                d = Arrays.copyOf(d, n * 2);
+                docs = d;
+            }
+            d[n] = key;
+            docCount = n + 1;
+            return n;
+        }
+    }
+
+    private static final class Postings {
+        volatile int[] ords;
+        volatile byte[] weights;
+        volatile int size;
+
+        Postings(int[] ords, byte[] weights, int size) {
+            this.ords = ords;
+            this.weights = weights;
+            this.size = size;
+        }
+
+        void append(int ord, byte weight) {
+            int n = size;
+            int[] o = ords;
+            byte[] w = weights;
+            if (n == o.length) {
+                o = Arrays.copyOf(o, Math.max(4, n * 2));
+                w = Arrays.copyOf(w, o.length);
+                ords = o;
+                weights = w;
+            }
+            o[n] = ord;
+            w[n] = weight;
+            size = n + 1;
+        }
+    }
+
+    private record Scored(MessageKey key, double score) {
+    }
+}
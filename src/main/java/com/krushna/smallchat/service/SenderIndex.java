@@ -0,0 +1,72 @@
+package com.krushna.smallchat.service;
+
+import com.krushna.smallchat.model.ChatMessage;
+
+import java.time.LocalDateTime;
+import java.util.Locale;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Secondary index of one room: each sender's message keys in timeline order, so "messages from X between T1 and T2"
+ * is a range of one sorted set, O(log n + k), instead of a scan of the room. Senders match case-insensitively.
+ */
+final class SenderIndex {
+
+    private final ConcurrentMap<String, ConcurrentSkipListSet<MessageKey>> bySender = new ConcurrentHashMap<>();
+
+    void add(ChatMessage message) {
+        if (message.getSender() == null) return;
+        MessageKey key = MessageKey.of(message);
+        // compute() so a prune dropping an emptied sender cannot lose this key
+        bySender.compute(normalize(message.getSender()), (s, keys) -> {
+            if (keys == null) keys = new ConcurrentSkipListSet<>();
+            keys.add(key);
+            return keys;
+        });
+    }
+
+    /**
+     * The sender's keys strictly between {@code after} and {@code before} (either may be null), oldest first.
+     */
+    NavigableSet<MessageKey> range(String sender, MessageKey after, MessageKey before) {
+        ConcurrentSkipListSet<MessageKey> keys = bySender.get(normalize(sender));
+        if (keys == null) return new ConcurrentSkipListSet<>();
+        if (after != null && before != null) {
+            return after.compareTo(before) < 0 ? keys.subSet(after, false, before, false) : new ConcurrentSkipListSet<>();
+        }
+        if (after != null) return keys.tailSet(after, false);
+        if (before != null) return keys.headSet(before, false);
+        return keys;
+    }
+
+    void removeBefore(LocalDateTime cutoff) {
+        removeHead(MessageKey.lowest(cutoff), false);
+    }
+
+    /**
+     * Drops keys up to and including {@code last}, as evicted from the room's store.
+     */
+    void removeThrough(MessageKey last) {
+        removeHead(last, true);
+    }
+
+    private void removeHead(MessageKey bound, boolean inclusive) {
+        for (String sender : bySender.keySet()) {
+            bySender.computeIfPresent(sender, (s, keys) -> {
+                keys.headSet(bound, inclusive).clear();
+                return keys.isEmpty() ? null : keys;
+            });
+        }
+    }
+
+    void clear() {
+        bySender.clear();
+    }
+
+    private static String normalize(String sender) {
+        return sender.trim().toLowerCase(Locale.ROOT);
+    }
+}
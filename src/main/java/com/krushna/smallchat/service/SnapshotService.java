@@ -0,0 +1,268 @@
+package com.krushna.smallchat.service;
+
+import com.azure.storage.blob.BlobContainerClient;
+import com.azure.storage.blob.BlobContainerClientBuilder;
+import com.azure.storage.blob.models.BlobItem;
+import com.azure.storage.blob.models.ListBlobsOptions;
+import com.krushna.smallchat.model.ChatMessage;
+import com.krushna.smallchat.repository.HistorySink;
+import com.krushna.smallchat.repository.MessageCodec;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compact snapshots of the in-memory store, kept on local disk or in a blob container.
+ * A snapshot is gzip'd {@code magic | version | high-water mark | (length, MessageCodec record)* | -1}.
+ * The high-water mark promises that every message stamped before it is in the snapshot, so a restore only needs
+ * the repository for what came after.
+ */
+@Service
+public class SnapshotService {
+
+    private static final Logger log = LoggerFactory.getLogger(SnapshotService.class);
+
+    private static final int MAGIC = 0x534D534E; // "SMSN"
+    private static final int VERSION = 1;
+    private static final String PREFIX = "snapshot-";
+    private static final String SUFFIX = ".bin.gz";
+    private static final int KEEP = 2;
+    private static final int RESTORE_PAGE_SIZE = 1000;
+
+    private final boolean enabled;
+    private final Path dir;
+    private final BlobContainerClient blobContainer;
+    private final Timer writeTimer;
+    private final Timer restoreTimer;
+    private final AtomicLong lastSizeBytes = new AtomicLong();
+    private final AtomicLong lastMessageCount = new AtomicLong();
+
+    public SnapshotService(
+            @Value("${smallchat.snapshot.enabled:false}") boolean enabled,
+            @Value("${smallchat.snapshot.target:local}") String target,
+            @Value("${smallchat.snapshot.dir:./data/snapshots}") String dir,
+            @Value("${smallchat.snapshot.blob-container:smallchat-snapshots}") String blobContainer,
+            @Value("${smallchat.azure.blob.connection-string:${smallchat.azure.table.connection-string:}}") String connectionString,
+            MeterRegistry registry
+    ) {
+        this.dir = Paths.get(dir);
+        boolean blob = "blob".equalsIgnoreCase(target.trim());
+        if (enabled && blob && (connectionString == null || connectionString.isBlank())) {
+            log.warn("Snapshots disabled: target is blob but no storage connection string is configured");
+            enabled = false;
+        }
+        this.enabled = enabled;
+        this.blobContainer = enabled && blob
+                ? new BlobContainerClientBuilder().connectionString(connectionString).containerName(blobContainer).buildClient()
+                : null;
+        this.writeTimer = Timer.builder("smallchat.snapshot.write")
+                .description("Time to write a snapshot of the in-memory store")
+                .register(registry);
+        this.restoreTimer = Timer.builder("smallchat.snapshot.restore")
+                .description("Time to restore the in-memory store from the newest snapshot")
+                .register(registry);
+        Gauge.builder("smallchat.snapshot.size", lastSizeBytes, AtomicLong::get)
+                .description("Size of the last snapshot written or restored")
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("smallchat.snapshot.messages", lastMessageCount, AtomicLong::get)
+                .description("Messages in the last snapshot written or restored")
+                .register(registry);
+        if (enabled) {
+            log.info("Snapshots enabled. Target: {}", blob ? "blob container " + blobContainer : this.dir.toAbsolutePath());
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Writes {@code messages} as the newest snapshot and prunes older ones.
+     * @param highWaterMark every message stamped before this must be in {@code messages}
+     */
+    public void write(Iterable<ChatMessage> messages, LocalDateTime highWaterMark) throws IOException {
+        if (!enabled) return;
+        long started = System.nanoTime();
+        Files.createDirectories(dir);
+        long hwm = MessageCodec.toEpochMillis(highWaterMark);
+        Path tmp = Files.createTempFile(dir, PREFIX, ".tmp");
+        long count = 0;
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new GZIPOutputStream(Files.newOutputStream(tmp), 64 * 1024), 64 * 1024))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(hwm);
+                for (ChatMessage m : messages) {
+                    byte[] record = MessageCodec.encode(m);
+                    out.writeInt(record.length);
+                    out.write(record);
+                    count++;
+                }
+                out.writeInt(-1);
+            }
+            long size = Files.size(tmp);
+            String name = String.format("%s%020d%s", PREFIX, hwm, SUFFIX);
+            if (blobContainer != null) {
+                blobContainer.createIfNotExists();
+                blobContainer.getBlobClient(name).uploadFromFile(tmp.toString(), true);
+            } else {
+                Files.move(tmp, dir.resolve(name), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            prune();
+            lastSizeBytes.set(size);
+            lastMessageCount.set(count);
+            long elapsed = System.nanoTime() - started;
+            writeTimer.record(elapsed, TimeUnit.NANOSECONDS);
+            log.info("Wrote snapshot {} ({} messages, {} bytes) in {} ms", name, count, size, TimeUnit.NANOSECONDS.toMillis(elapsed));
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Streams the newest snapshot into {@code sink}, skipping messages stamped before {@code since}.
+     * @return the snapshot's high-water mark, or null if there is no readable snapshot
+     */
+    public LocalDateTime restoreLatest(LocalDateTime since, HistorySink sink) {
+        if (!enabled) return null;
+        long started = System.nanoTime();
+        Path file = null;
+        boolean downloaded = false;
+        try {
+            String name = newest();
+            if (name == null) return null;
+            if (blobContainer != null) {
+                Files.createDirectories(dir);
+                file = Files.createTempFile(dir, PREFIX, ".download");
+                blobContainer.getBlobClient(name).downloadToFile(file.toString(), true);
+                downloaded = true;
+            } else {
+                file = dir.resolve(name);
+            }
+            long sinceMs = since != null ? MessageCodec.toEpochMillis(since) : Long.MIN_VALUE;
+            long count = 0;
+            LocalDateTime hwm;
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    new GZIPInputStream(Files.newInputStream(file), 64 * 1024), 64 * 1024))) {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                    log.warn("Ignoring snapshot {}: unknown format", name);
+                    return null;
+                }
+                long hwmMs = in.readLong();
+                hwm = LocalDateTime.ofEpochSecond(Math.floorDiv(hwmMs, 1000L), (int) Math.floorMod(hwmMs, 1000L) * 1_000_000, ZoneOffset.UTC);
+                List<ChatMessage> page = new ArrayList<>(RESTORE_PAGE_SIZE);
+                int len;
+                while ((len = in.readInt()) >= 0) {
+                    byte[] record = new byte[len];
+                    in.readFully(record);
+                    ByteBuffer buf = ByteBuffer.wrap(record);
+                    if (MessageCodec.peekEpochMillis(buf, 0) < sinceMs) continue;
+                    page.add(MessageCodec.decode(buf));
+                    count++;
+                    if (page.size() >= RESTORE_PAGE_SIZE) {
+                        sink.page(page);
+                        page = new ArrayList<>(RESTORE_PAGE_SIZE);
+                    }
+                }
+                if (!page.isEmpty()) sink.page(page);
+            }
+            long elapsed = System.nanoTime() - started;
+            restoreTimer.record(elapsed, TimeUnit.NANOSECONDS);
+            lastSizeBytes.set(Files.size(file));
+            lastMessageCount.set(count);
+            log.info("Restored {} messages from snapshot {} in {} ms", count, name, TimeUnit.NANOSECONDS.toMillis(elapsed));
+            return hwm;
+        } catch (Exception e) {
+            log.warn("Snapshot restore failed: {}", e.getMessage());
+            return null;
+        } finally {
+            if (downloaded) {
+                try {
+                    Files.deleteIfExists(file);
+                } catch (IOException ignored) {
+                    // scratch file, best-effort
+                }
+            }
+        }
+    }
+
+    /**
+     * High-water mark of the newest snapshot, read from its name without opening it.
+     */
+    public LocalDateTime latestHighWaterMark() {
+        if (!enabled) return null;
+        try {
+            String name = newest();
+            if (name == null) return null;
+            long hwmMs = Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+            return LocalDateTime.ofEpochSecond(Math.floorDiv(hwmMs, 1000L), (int) Math.floorMod(hwmMs, 1000L) * 1_000_000, ZoneOffset.UTC);
+        } catch (Exception e) {
+            log.warn("Could not look up snapshots: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private String newest() throws IOException {
+        List<String> names = list();
+        return names.isEmpty() ? null : names.get(names.size() - 1);
+    }
+
+    // Snapshot names, oldest first (names embed the zero-padded high-water mark)
+    private List<String> list() throws IOException {
+        if (blobContainer != null) {
+            if (!blobContainer.exists()) return List.of();
+            List<String> names = new ArrayList<>();
+            for (BlobItem item : blobContainer.listBlobs(new ListBlobsOptions().setPrefix(PREFIX), null)) {
+                if (item.getName().endsWith(SUFFIX)) names.add(item.getName());
+            }
+            names.sort(Comparator.naturalOrder());
+            return names;
+        }
+        if (!Files.isDirectory(dir)) return List.of();
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.map(p -> p.getFileName().toString())
+                    .filter(n -> n.startsWith(PREFIX) && n.endsWith(SUFFIX))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private void prune() throws IOException {
+        List<String> names = list();
+        for (int i = 0; i < names.size() - KEEP; i++) {
+            if (blobContainer != null) {
+                blobContainer.getBlobClient(names.get(i)).deleteIfExists();
+            } else {
+                Files.deleteIfExists(dir.resolve(names.get(i)));
+            }
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package com.krushna.smallchat.service;
+
+import com.krushna.smallchat.config.VirtualThreads;
+import com.krushna.smallchat.model.ChatMessage;
+import com.krushna.smallchat.repository.MessageRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind stage between the in-memory store and the repository.
+ * Saves are queued and a single writer thread flushes them through {@link MessageRepository#saveAll}
+ * once {@code batch-size} messages are pending or the oldest has waited {@code linger-ms}. Queue depth, each message's
+ * lag from enqueue to stored, and flush times are published as {@code smallchat.persistence.*}.
+ * <p>
+ * The queue holds at most {@code queue-capacity} messages. Past that, {@code overflow} decides: {@code drop-newest}
+ * discards the message being saved, {@code drop-oldest} the longest waiting one, and {@code block} holds the saving
+ * thread up to {@code offer-timeout-ms} before discarding it. A failed batch is retried with exponential backoff up
+ * to {@code retry.max-attempts} times before it counts as failed; while it is retried the queue fills, so a storage
+ * outage ends in the overflow policy rather than unbounded memory.
+ */
+@Component
+public class WriteBehindPersister {
+
+    private static final Logger log = LoggerFactory.getLogger(WriteBehindPersister.class);
+
+    private final MessageRepository repository;
+    private final int batchSize;
+    private final long lingerNanos;
+    private final BlockingQueue<Queued> pending;
+    private final Overflow overflow;
+    private final long offerTimeoutMs;
+    private final int maxAttempts;
+    private final long initialBackoffMs;
+    private final long maxBackoffMs;
+    private final Thread writer;
+    private final Timer lag;
+    private final Timer flushed;
+    private final Timer failed;
+    private final Counter failedMessages;
+    private final Counter retries;
+    private final Counter droppedMessages;
+    private volatile boolean running = true;
+
+    public WriteBehindPersister(
+            MessageRepository repository,
+            @Value("${smallchat.persistence.batch-size:100}") int batchSize,
+            @Value("${smallchat.persistence.linger-ms:50}") long lingerMs,
+            @Value("${smallchat.persistence.queue-capacity:100000}") int queueCapacity,
+            @Value("${smallchat.persistence.overflow:drop-newest}") String overflow,
+            @Value("${smallchat.persistence.offer-timeout-ms:1000}") long offerTimeoutMs,
+            @Value("${smallchat.persistence.retry.max-attempts:5}") int maxAttempts,
+            @Value("${smallchat.persistence.retry.initial-backoff-ms:200}") long initialBackoffMs,
+            @Value("${smallchat.persistence.retry.max-backoff-ms:10000}") long maxBackoffMs,
+            @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads,
+            MeterRegistry registry
+    ) {
+        this.repository = repository;
+        this.batchSize = Math.max(1, batchSize);
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, lingerMs));
+        this.pending = new LinkedBlockingQueue<>(Math.max(1, queueCapacity));
+        this.overflow = Overflow.parse(overflow);
+        this.offerTimeoutMs = Math.max(0, offerTimeoutMs);
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.initialBackoffMs = Math.max(0, initialBackoffMs);
+        this.maxBackoffMs = Math.max(this.initialBackoffMs, maxBackoffMs);
+        Gauge.builder("smallchat.persistence.queue", pending, BlockingQueue::size)
+                .description("Messages waiting for the write-behind writer")
+                .register(registry);
+        this.lag = Timer.builder("smallchat.persistence.lag")
+                .description("Time from a message being queued to its batch being stored")
+                .register(registry);
+        this.flushed = flushTimer(registry, "success");
+        this.failed = flushTimer(registry, "error");
+        this.failedMessages = Counter.builder("smallchat.persistence.failed")
+                .description("Messages in batches the repository failed to store, after every retry")
+                .register(registry);
+        this.retries = Counter.builder("smallchat.persistence.retries")
+                .description("Write-behind batches stored again after a failed attempt")
+                .register(registry);
+        this.droppedMessages = Counter.builder("smallchat.persistence.dropped")
+                .description("Messages discarded because the write-behind queue was full")
+                .register(registry);
+        this.writer = VirtualThreads.newThread("msg-persist-async", this::run, virtualThreads);
+        if (isEnabled()) {
+            writer.start();
+            log.info("Write-behind persistence started: batch-size={} linger-ms={} queue-capacity={} overflow={}",
+                    this.batchSize, lingerMs, queueCapacity, this.overflow);
+        }
+    }
+
+    public boolean isEnabled() {
+        return repository != null && repository.isEnabled();
+    }
+
+    public void enqueue(ChatMessage message) {
+        if (!running || !isEnabled()) return;
+        Queued queued = new Queued(message, System.nanoTime());
+        if (pending.offer(queued)) return;
+        switch (overflow) {
+            case DROP_OLDEST -> {
+                // Make room by discarding the longest waiting message, again if a concurrent save took the slot
+                do {
+                    if (pending.poll() != null) dropped();
+                } while (!pending.offer(queued));
+            }
+            case BLOCK -> {
+                try {
+                    if (!pending.offer(queued, offerTimeoutMs, TimeUnit.MILLISECONDS)) dropped();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    dropped();
+                }
+            }
+            default -> dropped();
+        }
+    }
+
+    private void dropped() {
+        droppedMessages.increment();
+        double n = droppedMessages.count();
+        if (n % 1000 == 1) log.warn("Write-behind queue full ({}), {} messages not persisted so far", overflow, (long) n);
+    }
+
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    private void run() {
+        List<Queued> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                Queued first = pending.poll(1, TimeUnit.SECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                // Linger briefly so bursts coalesce into full transactions
+                long deadline = System.nanoTime() + lingerNanos;
+                while (batch.size() < batchSize) {
+                    pending.drainTo(batch, batchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || remaining <= 0) break;
+                    Queued next = pending.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) break;
+                    batch.add(next);
+                }
+                flush(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    // Stores are idempotent by message id (Azure upserts; hydration skips ids already loaded), so a batch that
+    // partly landed before failing can be sent again whole
+    private void flush(List<Queued> batch) {
+        List<ChatMessage> messages = new ArrayList<>(batch.size());
+        for (Queued q : batch) messages.add(q.message);
+        long backoffMs = initialBackoffMs;
+        for (int attempt = 1; ; attempt++) {
+            long start = System.nanoTime();
+            try {
+                repository.saveAll(messages);
+                long end = System.nanoTime();
+                flushed.record(end - start, TimeUnit.NANOSECONDS);
+                for (Queued q : batch) lag.record(end - q.enqueuedAt, TimeUnit.NANOSECONDS);
+                return;
+            } catch (Exception e) {
+                failed.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                // On shutdown one attempt per batch, so stopping is not held up by a storage outage
+                if (attempt >= maxAttempts || !running) {
+                    failedMessages.increment(batch.size());
+                    log.warn("Failed to persist batch of {} messages after {} attempts: {}", batch.size(), attempt,
+                            e.getMessage());
+                    return;
+                }
+                log.debug("Persisting batch of {} messages failed (attempt {}), retrying in {} ms: {}", batch.size(),
+                        attempt, backoffMs, e.getMessage());
+            }
+            try {
+                Thread.sleep(backoffMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failedMessages.increment(batch.size());
+                return;
+            }
+            retries.increment();
+            backoffMs = Math.min(backoffMs * 2, maxBackoffMs);
+        }
+    }
+
+    private static Timer flushTimer(MeterRegistry registry, String outcome) {
+        return Timer.builder("smallchat.persistence.flush")
+                .description("Time to store one write-behind batch")
+                .tag("outcome", outcome)
+                .register(registry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (!isEnabled()) return;
+        running = false;
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Drain whatever is left on the caller's thread so a clean shutdown loses nothing
+        List<Queued> rest = new ArrayList<>();
+        while (pending.drainTo(rest, batchSize) > 0) {
+            flush(rest);
+            rest.clear();
+        }
+    }
+
+    private record Queued(ChatMessage message, long enqueuedAt) {
+    }
+
+    private enum Overflow {
+        DROP_NEWEST, DROP_OLDEST, BLOCK;
+
+        static Overflow parse(String value) {
+            try {
+                return valueOf(value.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Invalid smallchat.persistence.overflow (expected drop-newest, "
+                        + "drop-oldest or block): " + value);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return name().toLowerCase(Locale.ROOT).replace('_', '-');
+        }
+    }
+}
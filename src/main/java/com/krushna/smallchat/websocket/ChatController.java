@@ -1,11 +1,12 @@
 package com.krushna.smallchat.websocket;
 
 import com.krushna.smallchat.model.ChatMessage;
-import com.krushna.smallchat.service.MessageStorageService;
+import com.krushna.smallchat.service.ChatBroadcaster;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.handler.annotation.Payload;
-import org.springframework.messaging.handler.annotation.SendTo;
 import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
 import org.springframework.stereotype.Controller;
 import java.time.LocalDateTime;
@@ -13,27 +14,39 @@ import java.time.LocalDateTime;
 @Controller
 public class ChatController {
 
+    private static final Logger log = LoggerFactory.getLogger(ChatController.class);
+
     @Autowired
-    private MessageStorageService messageStorageService;
+    private ChatBroadcaster broadcaster;
 
     @MessageMapping("/chat.sendMessage")
-    @SendTo("/topic/public")
-    public ChatMessage sendMessage(@Payload ChatMessage chatMessage) {
+    public void sendMessage(@Payload ChatMessage chatMessage) {
+        if (!ChatMessage.isValidRoom(chatMessage.getRoom())) {
+            log.warn("Dropping message for invalid room '{}'", chatMessage.getRoom());
+            return;
+        }
         // Ensure server-side timestamp is set
         if (chatMessage.getTimestamp() == null) {
             chatMessage.setTimestamp(LocalDateTime.now());
         }
-        // Save message to in-memory storage
-        messageStorageService.saveMessage(chatMessage);
-        return chatMessage;
+        // Save and broadcast to the room's topic on every node
+        try {
+            broadcaster.publish(chatMessage, ChatBroadcaster.SOURCE_WEBSOCKET);
+        } catch (IllegalArgumentException e) {
+            log.warn("Dropping message: {}", e.getMessage());
+        }
     }
 
     @MessageMapping("/chat.addUser")
-    @SendTo("/topic/public")
-    public ChatMessage addUser(@Payload ChatMessage chatMessage,
+    public void addUser(@Payload ChatMessage chatMessage,
                                SimpMessageHeaderAccessor headerAccessor) {
-        // Add username in web socket session
+        if (!ChatMessage.isValidRoom(chatMessage.getRoom())) {
+            log.warn("Ignoring join to invalid room '{}'", chatMessage.getRoom());
+            return;
+        }
+        // Add username and room in web socket session
         headerAccessor.getSessionAttributes().put("username", chatMessage.getSender());
+        headerAccessor.getSessionAttributes().put("room", chatMessage.getRoom());
         
         // Create join message
         ChatMessage joinMessage = new ChatMessage(
@@ -41,10 +54,13 @@ public class ChatController {
             chatMessage.getSender() + " joined the chat!",
             ChatMessage.MessageType.JOIN
         );
+        joinMessage.setRoom(chatMessage.getRoom());
         
-        // Save join message
-        messageStorageService.saveMessage(joinMessage);
-        
-        return joinMessage;
+        // Save and broadcast join message
+        try {
+            broadcaster.publish(joinMessage, ChatBroadcaster.SOURCE_WEBSOCKET);
+        } catch (IllegalArgumentException e) {
+            log.warn("Dropping join message: {}", e.getMessage());
+        }
     }
 }
@@ -0,0 +1,204 @@
+package com.krushna.smallchat.websocket;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationContext;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompEncoder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+import org.springframework.web.socket.handler.WebSocketHandlerDecoratorFactory;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+import org.springframework.web.socket.messaging.StompSubProtocolHandler;
+import org.springframework.web.socket.messaging.SubProtocolHandler;
+import org.springframework.web.socket.messaging.SubProtocolWebSocketHandler;
+import org.springframework.web.socket.sockjs.frame.Jackson2SockJsMessageCodec;
+import org.springframework.web.socket.sockjs.frame.SockJsMessageCodec;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Encodes a broadcast once for all of its subscribers instead of once per session.
+ * <p>
+ * The simple broker hands every subscriber the same payload array, and {@link com.krushna.smallchat.service.ChatBroadcaster} gives each broadcast
+ * a fixed {@code message-id}. As a result the STOMP frames for one broadcast differ only by subscription id, and
+ * browser clients all use the same one. Three small identity-keyed caches then turn the per-session work into
+ * lookups:
+ * <ul>
+ *   <li>the STOMP encoder returns the same frame bytes for the same payload and headers</li>
+ *   <li>sessions swap the {@link TextMessage} around those bytes for one shared instance</li>
+ *   <li>the SockJS codec returns the same {@code a[...]} frame for that shared instance's text</li>
+ * </ul>
+ * What is left per session is the broker's routing, Spring's header handling and the socket write itself.
+ */
+@Component
+public class SharedFrameEncoding implements SmartInitializingSingleton {
+
+    private static final Logger log = LoggerFactory.getLogger(SharedFrameEncoding.class);
+
+    // Enough for the broadcasts the outbound threads have in flight at once, times a few subscription ids
+    private static final int CACHE_SLOTS = 64;
+
+    private final boolean enabled;
+    private final ApplicationContext context;
+    private final IdentityCache stompFrames = new IdentityCache();
+    private final IdentityCache textMessages = new IdentityCache();
+    private final IdentityCache sockJsFrames = new IdentityCache();
+    private final Counter encoded;
+    private final Counter reused;
+
+    public SharedFrameEncoding(
+            @Value("${smallchat.websocket.encode-once:true}") boolean enabled,
+            ApplicationContext context,
+            MeterRegistry registry
+    ) {
+        this.enabled = enabled;
+        this.context = context;
+        this.encoded = Counter.builder("smallchat.websocket.frames")
+                .description("STOMP MESSAGE frames by whether they were encoded or reused from another session")
+                .tag("result", "encoded")
+                .register(registry);
+        this.reused = Counter.builder("smallchat.websocket.frames")
+                .description("STOMP MESSAGE frames by whether they were encoded or reused from another session")
+                .tag("result", "reused")
+                .register(registry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Installs the caching encoder on the STOMP protocol handler once the WebSocket beans exist,
+     * which is before the server starts accepting connections.
+     */
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (!enabled) return;
+        WebSocketHandler handler = context.getBean("subProtocolWebSocketHandler", WebSocketHandler.class);
+        if (!(WebSocketHandlerDecorator.unwrap(handler) instanceof SubProtocolWebSocketHandler subProtocolHandler)) {
+            log.warn("No SubProtocolWebSocketHandler found; broadcasts are encoded per session");
+            return;
+        }
+        for (SubProtocolHandler protocolHandler : subProtocolHandler.getProtocolHandlers()) {
+            if (protocolHandler instanceof StompSubProtocolHandler stomp) {
+                stomp.setEncoder(stompEncoder());
+            }
+        }
+        log.info("Broadcast frames are encoded once and shared across sessions");
+    }
+
+    /**
+     * STOMP encoder that reuses the frame bytes of a broadcast it has already encoded for another session.
+     */
+    public StompEncoder stompEncoder() {
+        return new SharedStompEncoder();
+    }
+
+    /**
+     * SockJS codec that reuses the frame for a message text it has just encoded for another session.
+     */
+    public SockJsMessageCodec sockJsMessageCodec() {
+        return new SharedSockJsCodec();
+    }
+
+    /**
+     * Session decorator that shares one {@link TextMessage} per encoded frame.
+     */
+    public WebSocketHandlerDecoratorFactory sessionDecorator() {
+        return handler -> new WebSocketHandlerDecorator(handler) {
+            @Override
+            public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+                super.afterConnectionEstablished(enabled ? new SharedTextSession(session) : session);
+            }
+        };
+    }
+
+    private final class SharedStompEncoder extends StompEncoder {
+        @Override
+        public byte[] encode(Map<String, Object> headers, byte[] payload) {
+            // Only broker MESSAGE frames repeat across sessions; CONNECTED, RECEIPT etc. do not
+            if (payload.length == 0 || SimpMessageHeaderAccessor.getMessageType(headers) != SimpMessageType.MESSAGE) {
+                return super.encode(headers, payload);
+            }
+            Object nativeHeaders = headers.get(SimpMessageHeaderAccessor.NATIVE_HEADERS);
+            byte[] frame = (byte[]) stompFrames.get(payload, nativeHeaders);
+            if (frame != null) {
+                reused.increment();
+                return frame;
+            }
+            frame = super.encode(headers, payload);
+            stompFrames.put(payload, nativeHeaders, frame);
+            textMessages.put(frame, null, new TextMessage(frame));
+            encoded.increment();
+            return frame;
+        }
+    }
+
+    private final class SharedTextSession extends WebSocketSessionDecorator {
+        SharedTextSession(WebSocketSession delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public void sendMessage(WebSocketMessage<?> message) throws IOException {
+            if (message instanceof TextMessage text) {
+                // Frames from the STOMP handler wrap the encoder's bytes, so asBytes() does not copy
+                TextMessage shared = (TextMessage) textMessages.get(text.asBytes(), null);
+                super.sendMessage(shared != null ? shared : text);
+            } else {
+                super.sendMessage(message);
+            }
+        }
+    }
+
+    private final class SharedSockJsCodec extends Jackson2SockJsMessageCodec {
+        @Override
+        public String encode(String... messages) {
+            if (messages.length != 1) return super.encode(messages);
+            String frame = (String) sockJsFrames.get(messages[0], null);
+            if (frame == null) {
+                frame = super.encode(messages);
+                sockJsFrames.put(messages[0], null, frame);
+            }
+            return frame;
+        }
+    }
+
+    /**
+     * Lock-free ring of the most recent entries, matched by key identity plus an optional equal-by-value qualifier.
+     * A miss only costs an encode, so entries are simply overwritten in turn.
+     */
+    private static final class IdentityCache {
+        private final AtomicReferenceArray<Entry> slots = new AtomicReferenceArray<>(CACHE_SLOTS);
+        private final AtomicInteger next = new AtomicInteger();
+
+        Object get(Object key, Object qualifier) {
+            for (int i = 0; i < CACHE_SLOTS; i++) {
+                Entry e = slots.get(i);
+                if (e != null && e.key == key && Objects.equals(e.qualifier, qualifier)) return e.value;
+            }
+            return null;
+        }
+
+        void put(Object key, Object qualifier, Object value) {
+            slots.set(next.getAndIncrement() & (CACHE_SLOTS - 1), new Entry(key, qualifier, value));
+        }
+
+        private record Entry(Object key, Object qualifier, Object value) {
+        }
+    }
+}
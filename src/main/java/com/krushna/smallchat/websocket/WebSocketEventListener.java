@@ -1,10 +1,9 @@
 package com.krushna.smallchat.websocket;
 
 import com.krushna.smallchat.model.ChatMessage;
-import com.krushna.smallchat.service.MessageStorageService;
+import com.krushna.smallchat.service.ChatBroadcaster;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.event.EventListener;
-import org.springframework.messaging.simp.SimpMessageSendingOperations;
 import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.messaging.SessionConnectedEvent;
@@ -14,10 +13,7 @@ import org.springframework.web.socket.messaging.SessionDisconnectEvent;
 public class WebSocketEventListener {
 
     @Autowired
-    private SimpMessageSendingOperations messagingTemplate;
-
-    @Autowired
-    private MessageStorageService messageStorageService;
+    private ChatBroadcaster broadcaster;
 
     @EventListener
     public void handleWebSocketConnectListener(SessionConnectedEvent event) {
@@ -37,11 +33,10 @@ public class WebSocketEventListener {
                 username + " left the chat!",
                 ChatMessage.MessageType.LEAVE
             );
+            leaveMessage.setRoom((String) headerAccessor.getSessionAttributes().get("room"));
 
-            // Save leave message
-            messageStorageService.saveMessage(leaveMessage);
-
-            messagingTemplate.convertAndSend("/topic/public", leaveMessage);
+            // Save and broadcast leave message
+            broadcaster.publish(leaveMessage, ChatBroadcaster.SOURCE_WEBSOCKET);
         }
     }
 }
@@ -17,6 +17,13 @@ var loadedInitialHistory = false;
 var reconnectAttempts = 0;
 var reconnectTimer = null;
 var maxReconnectDelayMs = 30000;
+var historyPageSize = 200;
+var olderCursor = null; // id of the oldest loaded message while older history remains
+var loadingOlder = false;
+var lastSeenId = null; // newest message id received, for catching up after a reconnect
+var catchingUp = false; // live messages wait in pendingLive while history or a sync is loading
+var pendingLive = [];
+var room = getRoom();
 
 var colors = [
     '#2196F3', '#32c787', '#00BCD4', '#ff5652',
@@ -35,6 +42,17 @@ function getUsername() {
     return localStorage.getItem('username');
 }
 
+// Room from ?room=<id>; the default room otherwise
+function getRoom() {
+    const roomFromUrl = new URLSearchParams(window.location.search).get('room');
+    return roomFromUrl && /^[A-Za-z0-9_-]{1,64}$/.test(roomFromUrl) ? roomFromUrl : 'public';
+}
+
+// The default room keeps /topic/public; other rooms are /topic/room.<id>
+function roomTopic() {
+    return room === 'public' ? '/topic/public' : '/topic/room.' + room;
+}
+
 function connect(event) {
     console.log('Connect function called');
     event.preventDefault();
@@ -74,13 +92,17 @@ function connect(event) {
 }
 
 function onConnected() {
+    // Hold live messages until the history they follow is on screen
+    catchingUp = true;
+    pendingLive = [];
+
     // Subscribe to the Public Topic
-    stompClient.subscribe('/topic/public', onMessageReceived);
+    stompClient.subscribe(roomTopic(), onMessageReceived);
 
     // Announce join on connect so users see you entered the room
     stompClient.send("/app/chat.addUser",
         {},
-        JSON.stringify({sender: username, type: 'JOIN'})
+        JSON.stringify({sender: username, type: 'JOIN', room: room})
     );
 
     connectingElement.classList.add('hidden');
@@ -88,10 +110,12 @@ function onConnected() {
     setConnectionStatus('Connected');
     reconnectAttempts = 0;
     
-    // Load recent messages only once per page load
+    // Load recent messages once per page load; after a reconnect fetch only what was missed
     if (!loadedInitialHistory) {
-        loadRecentMessages();
+        loadRecentMessages(endCatchUp);
         loadedInitialHistory = true;
+    } else {
+        syncMissedMessages();
     }
     
     // Request notification permission
@@ -166,7 +190,8 @@ function sendMessage(event) {
         var chatMessage = {
             sender: username,
             content: messageInput.value,
-            type: 'CHAT'
+            type: 'CHAT',
+            room: room
         };
         stompClient.send("/app/chat.sendMessage", {}, JSON.stringify(chatMessage));
         messageInput.value = '';
@@ -175,7 +200,31 @@ function sendMessage(event) {
 }
 
 function onMessageReceived(payload) {
-    var message = JSON.parse(payload.body);
+    var body = JSON.parse(payload.body);
+
+    // The server may coalesce a burst into one frame carrying an array of messages
+    var messages = Array.isArray(body) ? body : [body];
+    if (catchingUp) {
+        Array.prototype.push.apply(pendingLive, messages);
+        return;
+    }
+    messages.forEach(displayMessage);
+    messageArea.scrollTop = messageArea.scrollHeight;
+}
+
+// Show live messages held during catch-up, skipping any the history or sync response already rendered
+function endCatchUp(renderedIds) {
+    catchingUp = false;
+    var live = pendingLive;
+    pendingLive = [];
+    live.forEach(message => {
+        if (!renderedIds || !renderedIds.has(message.id)) displayMessage(message);
+    });
+    messageArea.scrollTop = messageArea.scrollHeight;
+}
+
+function displayMessage(message) {
+    if (message.id) lastSeenId = message.id;
 
     // Optionally hide system messages
     if (!showSystem && (message.type === 'JOIN' || message.type === 'LEAVE')) {
@@ -212,7 +261,6 @@ function onMessageReceived(payload) {
     messageElement.appendChild(messageContent);
 
     messageArea.appendChild(messageElement);
-    messageArea.scrollTop = messageArea.scrollHeight;
 }
 
 // Function to convert URLs in text to clickable links
@@ -364,35 +412,113 @@ function formatTime(timestamp) {
     }
 }
 
-function loadRecentMessages() {
-    const url = '/api/messages' + '?includeSystem=' + (showSystem ? 'true' : 'false');
-    fetch(url)
+function createHistoryElement(message) {
+    var messageElement = document.createElement('li');
+
+    if(message.type === 'JOIN' || message.type === 'LEAVE') {
+        messageElement.classList.add('event-message');
+    } else {
+        messageElement.classList.add('chat-message');
+        if(message.sender === username) {
+            messageElement.classList.add('sent');
+        } else {
+            messageElement.classList.add('received');
+        }
+    }
+
+    messageElement.appendChild(createMessageContent(message));
+    return messageElement;
+}
+
+function historyUrl(cursor) {
+    var url = '/api/rooms/' + encodeURIComponent(room) + '/messages?limit=' + historyPageSize + '&includeSystem=' + (showSystem ? 'true' : 'false');
+    if (cursor) url += '&before=' + encodeURIComponent(cursor);
+    return url;
+}
+
+// Replaces the rendered history with the newest page; done, if given, receives the ids it rendered
+function loadRecentMessages(done) {
+    olderCursor = null;
+    var renderedIds = new Set();
+    fetch(historyUrl(null))
         .then(response => response.json())
-        .then(messages => {
-            messages.forEach(message => {
+        .then(page => {
+            page.messages.forEach(message => {
+                renderedIds.add(message.id);
                 if (!showSystem && (message.type === 'JOIN' || message.type === 'LEAVE')) return;
-                var messageElement = document.createElement('li');
-                
-                if(message.type === 'JOIN' || message.type === 'LEAVE') {
-                    messageElement.classList.add('event-message');
-                } else {
-                    messageElement.classList.add('chat-message');
-                    if(message.sender === username) {
-                        messageElement.classList.add('sent');
-                    } else {
-                        messageElement.classList.add('received');
-                    }
-                }
-                
-                var messageContent = createMessageContent(message);
-                messageElement.appendChild(messageContent);
-                messageArea.appendChild(messageElement);
+                messageArea.appendChild(createHistoryElement(message));
             });
-            
+            if (page.messages.length > 0) lastSeenId = page.messages[page.messages.length - 1].id;
+            olderCursor = page.nextCursor;
             messageArea.scrollTop = messageArea.scrollHeight;
         })
         .catch(error => {
             console.error('Error loading recent messages:', error);
+        })
+        .then(() => {
+            if (done) done(renderedIds);
+        });
+}
+
+// After a reconnect: append only the messages sent since lastSeenId. If the server says the gap is too large,
+// start over from the newest page of history
+function syncMissedMessages() {
+    if (!lastSeenId) {
+        reloadHistory();
+        return;
+    }
+    var url = '/api/rooms/' + encodeURIComponent(room) + '/messages/sync?since=' + encodeURIComponent(lastSeenId)
+        + '&includeSystem=' + (showSystem ? 'true' : 'false');
+    fetch(url)
+        .then(response => {
+            if (!response.ok) throw new Error('HTTP ' + response.status);
+            return response.json();
+        })
+        .then(sync => {
+            if (sync.tooFarBehind) {
+                reloadHistory();
+                return;
+            }
+            var renderedIds = new Set();
+            sync.messages.forEach(message => {
+                renderedIds.add(message.id);
+                displayMessage(message);
+            });
+            endCatchUp(renderedIds);
+        })
+        .catch(error => {
+            console.error('Error syncing missed messages:', error);
+            reloadHistory();
+        });
+}
+
+function reloadHistory() {
+    if (messageArea) messageArea.innerHTML = '';
+    loadRecentMessages(endCatchUp);
+}
+
+// Fetch the page before the oldest rendered message and prepend it, keeping the viewport still
+function loadOlderMessages() {
+    if (!olderCursor || loadingOlder) return;
+    loadingOlder = true;
+    fetch(historyUrl(olderCursor))
+        .then(response => response.json())
+        .then(page => {
+            var previousHeight = messageArea.scrollHeight;
+            var fragment = document.createDocumentFragment();
+            page.messages.forEach(message => {
+                if (!showSystem && (message.type === 'JOIN' || message.type === 'LEAVE')) return;
+                fragment.appendChild(createHistoryElement(message));
+            });
+            messageArea.insertBefore(fragment, messageArea.firstChild);
+            messageArea.scrollTop += messageArea.scrollHeight - previousHeight;
+            olderCursor = page.nextCursor;
+        })
+        .catch(error => {
+            console.error('Error loading older messages:', error);
+        })
+        .finally(() => {
+            loadingOlder = false;
         });
 }
 
@@ -456,6 +582,13 @@ document.addEventListener('DOMContentLoaded', function() {
         });
     }
     
+    // Page in older history when scrolled to the top
+    if (messageArea) {
+        messageArea.addEventListener('scroll', function() {
+            if (messageArea.scrollTop < 50) loadOlderMessages();
+        });
+    }
+
     // Hook refresh button
     const refreshBtn = document.getElementById('refresh-btn');
     if (refreshBtn) {
@@ -0,0 +1,67 @@
+package com.krushna.smallchat.model;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark for Jackson serialization of {@link ChatMessage} lists, the body of every history response, with the
+ * mapper configured as the app's. {@code mapper} writes through {@code writeValueAsBytes} as the message converters
+ * do; {@code writer} reuses one {@link ObjectWriter}, the floor for what the mapper can do.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ChatMessageSerializationBenchmark {
+
+    @Param({"1", "50", "1000"})
+    int messages;
+
+    private ObjectMapper mapper;
+    private ObjectWriter writer;
+    private List<ChatMessage> list;
+
+    @Setup
+    public void setUp() {
+        mapper = new ObjectMapper().findAndRegisterModules().disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        writer = mapper.writerFor(mapper.getTypeFactory().constructCollectionType(List.class, ChatMessage.class));
+        list = new ArrayList<>(messages);
+        LocalDateTime start = LocalDateTime.now().minusHours(1);
+        for (int i = 0; i < messages; i++) {
+            list.add(new ChatMessage(UUID.randomUUID().toString(), "sender" + (i % 50),
+                    "Benchmark message number " + i + " with some ordinary chat text", ChatMessage.MessageType.CHAT,
+                    start.plusSeconds(i)));
+        }
+    }
+
+    @Benchmark
+    public byte[] mapper() throws JsonProcessingException {
+        return mapper.writeValueAsBytes(list);
+    }
+
+    @Benchmark
+    public byte[] writer() throws JsonProcessingException {
+        return writer.writeValueAsBytes(list);
+    }
+}
@@ -0,0 +1,59 @@
+package com.krushna.smallchat.repository;
+
+import com.azure.data.tables.models.TableEntity;
+import com.krushna.smallchat.model.ChatMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark for the Azure Table mapping of one message: {@code toEntity} on every write, {@code fromEntity} on
+ * every row read by hydration and history loads. No table is contacted; the repository is built without a
+ * connection string, for each partition layout.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EntityMappingBenchmark {
+
+    @Param({"single", "hourly"})
+    String layout;
+
+    private AzureTableMessageRepository repository;
+    private ChatMessage message;
+    private TableEntity entity;
+
+    @Setup
+    public void setUp() {
+        repository = new AzureTableMessageRepository("", "bench", "default", layout, 1, 1, false);
+        message = new ChatMessage(UUID.randomUUID().toString(), "sender7",
+                "Benchmark message with some ordinary chat text", ChatMessage.MessageType.CHAT, LocalDateTime.now());
+        message.setRoom("dev");
+        entity = repository.toEntity(message);
+    }
+
+    @Benchmark
+    public TableEntity toEntity() {
+        return repository.toEntity(message);
+    }
+
+    @Benchmark
+    public ChatMessage fromEntity() {
+        return repository.fromEntity(entity);
+    }
+}
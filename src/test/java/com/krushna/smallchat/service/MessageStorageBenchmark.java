@@ -0,0 +1,155 @@
+package com.krushna.smallchat.service;
+
+import com.krushna.smallchat.model.ChatMessage;
+import com.krushna.smallchat.repository.AzureTableMessageRepository;
+import com.krushna.smallchat.repository.MessageRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmarks for the in-memory store, on both engines: {@link MessageStorageService#saveMessage} from several
+ * threads at once, and {@code getAllMessages}/{@code getRecentMessages} against a room of 10k, 100k and 1M messages.
+ * The service runs with its real collaborators and default settings, wired by a small Spring context, with
+ * persistence disabled so only memory is measured.
+ * <p>
+ * Run with {@code mvn -Pbenchmark -DskipTests verify -Djmh.args=MessageStorageBenchmark}; see the README.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms3g", "-Xmx3g"})
+public class MessageStorageBenchmark {
+
+    private static final String ROOM = ChatMessage.DEFAULT_ROOM;
+    private static final int SENDERS = 50;
+    private static final int RECENT_LIMIT = 50;
+
+    @State(Scope.Benchmark)
+    public static class EmptyStore {
+        @Param({"heap", "compact"})
+        String engine;
+
+        AnnotationConfigApplicationContext context;
+        MessageStorageService service;
+
+        @Setup(Level.Trial)
+        public void start() {
+            context = newContext(engine);
+            service = context.getBean(MessageStorageService.class);
+        }
+
+        // Each iteration starts empty, so how fast the last one ran does not decide how big this one's store is
+        @Setup(Level.Iteration)
+        public void clear() {
+            service.clearAllMessages();
+        }
+
+        @TearDown(Level.Trial)
+        public void stop() {
+            context.close();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class FilledStore {
+        @Param({"10000", "100000", "1000000"})
+        int size;
+
+        @Param({"heap", "compact"})
+        String engine;
+
+        AnnotationConfigApplicationContext context;
+        MessageStorageService service;
+
+        @Setup(Level.Trial)
+        public void start() {
+            context = newContext(engine);
+            service = context.getBean(MessageStorageService.class);
+            // A day of history, oldest first, as live traffic would have saved it
+            LocalDateTime start = LocalDateTime.now().minusDays(1);
+            long stepNanos = TimeUnit.DAYS.toNanos(1) / size;
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (int i = 0; i < size; i++) {
+                service.saveMessage(message(random, "sender" + (i % SENDERS), i, start.plusNanos(i * stepNanos)));
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void stop() {
+            context.close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Writer {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        final String sender = "sender" + random.nextInt(SENDERS);
+        int sequence;
+    }
+
+    @Benchmark
+    @Threads(4)
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public void saveMessage(EmptyStore store, Writer writer) {
+        store.service.saveMessage(message(writer.random, writer.sender, writer.sequence++, LocalDateTime.now()));
+    }
+
+    @Benchmark
+    public List<ChatMessage> getAllMessages(FilledStore store) {
+        return store.service.getAllMessages(ROOM, false);
+    }
+
+    @Benchmark
+    public List<ChatMessage> getRecentMessages(FilledStore store) {
+        return store.service.getRecentMessages(ROOM, RECENT_LIMIT, false);
+    }
+
+    private static ChatMessage message(ThreadLocalRandom random, String sender, int n, LocalDateTime timestamp) {
+        // Random UUIDs without SecureRandom, which would serialize the writers on its lock
+        String id = new UUID(random.nextLong(), random.nextLong()).toString();
+        return new ChatMessage(id, sender, "Benchmark message number " + n + " with some ordinary chat text",
+                ChatMessage.MessageType.CHAT, timestamp);
+    }
+
+    private static AnnotationConfigApplicationContext newContext(String engine) {
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME))
+                .setLevel(ch.qos.logback.classic.Level.WARN);
+        AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+        context.getEnvironment().getPropertySources()
+                .addFirst(new MapPropertySource("benchmark", Map.of("smallchat.store.engine", engine)));
+        context.registerBean(MeterRegistry.class, SimpleMeterRegistry::new);
+        // No connection string: persistence and hydration stay off
+        context.registerBean(MessageRepository.class,
+                () -> new AzureTableMessageRepository("", "bench", "default", "single", 1, 1, false));
+        context.register(WriteBehindPersister.class, SnapshotService.class, MessageStorageService.class);
+        context.refresh();
+        return context;
+    }
+}
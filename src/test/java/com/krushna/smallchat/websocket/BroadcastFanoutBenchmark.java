@@ -0,0 +1,249 @@
+package com.krushna.smallchat.websocket;
+
+import ch.qos.logback.classic.Level;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.krushna.smallchat.model.ChatMessage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketExtension;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.messaging.StompSubProtocolHandler;
+import org.springframework.web.socket.messaging.SubProtocolWebSocketHandler;
+import org.springframework.web.socket.sockjs.frame.Jackson2SockJsMessageCodec;
+import org.springframework.web.socket.sockjs.frame.SockJsMessageCodec;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.Principal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * CPU and allocation per {@code /topic/public} broadcast against subscriber count, with and without
+ * {@link SharedFrameEncoding}. Runs the real broker, STOMP handler and session decorators on synchronous channels,
+ * so all of a broadcast's work happens on the calling thread. Sessions stand in for SockJS over WebSocket: each one
+ * SockJS-encodes the text frame and converts it to UTF-8 the way the container would before writing.
+ * <p>
+ * Not a unit test; run it as a program:
+ * <pre>
+ * mvn -q test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -cp target/classes:target/test-classes:$(cat target/cp.txt) com.krushna.smallchat.websocket.BroadcastFanoutBenchmark
+ * </pre>
+ * Optional arguments: subscriber counts (default {@code 1,10,100,1000,5000}).
+ */
+public class BroadcastFanoutBenchmark {
+
+    private static final String TOPIC = "/topic/public";
+    private static final int WARMUP_ROUNDS = 3;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    public static void main(String[] args) throws Exception {
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+        int[] counts = {1, 10, 100, 1000, 5000};
+        if (args.length > 0) {
+            String[] parts = args[0].split(",");
+            counts = new int[parts.length];
+            for (int i = 0; i < parts.length; i++) counts[i] = Integer.parseInt(parts[i].trim());
+        }
+        System.out.printf("%-12s %-10s %16s %18s %18s%n", "subscribers", "mode", "cpu us/broadcast", "cpu ns/subscriber",
+                "bytes/subscriber");
+        for (int subscribers : counts) {
+            for (boolean shared : new boolean[]{false, true}) {
+                Result r = run(subscribers, shared);
+                System.out.printf("%-12d %-10s %16.1f %18.0f %18.0f%n", subscribers, shared ? "shared" : "per-session",
+                        r.cpuNanos / 1000.0, r.cpuNanos / subscribers, r.allocatedBytes / subscribers);
+            }
+        }
+    }
+
+    private static Result run(int subscribers, boolean shared) throws Exception {
+        SharedFrameEncoding frames = new SharedFrameEncoding(shared, null, new SimpleMeterRegistry());
+        ExecutorSubscribableChannel inbound = new ExecutorSubscribableChannel();
+        ExecutorSubscribableChannel outbound = new ExecutorSubscribableChannel();
+        ExecutorSubscribableChannel brokerChannel = new ExecutorSubscribableChannel();
+
+        SimpleBrokerMessageHandler broker = new SimpleBrokerMessageHandler(inbound, outbound, brokerChannel, List.of("/topic"));
+        broker.start();
+
+        StompSubProtocolHandler stomp = new StompSubProtocolHandler();
+        if (shared) stomp.setEncoder(frames.stompEncoder());
+        SubProtocolWebSocketHandler subProtocol = new SubProtocolWebSocketHandler(inbound, outbound);
+        subProtocol.addProtocolHandler(stomp);
+        subProtocol.start();
+        WebSocketHandler handler = frames.sessionDecorator().decorate(subProtocol);
+
+        SockJsMessageCodec codec = shared ? frames.sockJsMessageCodec() : new Jackson2SockJsMessageCodec();
+        List<FakeSession> sessions = new ArrayList<>(subscribers);
+        for (int i = 0; i < subscribers; i++) {
+            FakeSession session = new FakeSession("s" + i, codec);
+            handler.afterConnectionEstablished(session);
+            handler.handleMessage(session, new TextMessage("CONNECT\naccept-version:1.2\nhost:localhost\n\n\0"));
+            handler.handleMessage(session, new TextMessage("SUBSCRIBE\nid:sub-0\ndestination:" + TOPIC + "\n\n\0"));
+            sessions.add(session);
+        }
+
+        ObjectMapper mapper = new ObjectMapper().findAndRegisterModules().disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        MappingJackson2MessageConverter converter = new MappingJackson2MessageConverter();
+        converter.setObjectMapper(mapper);
+        SimpMessagingTemplate template = new SimpMessagingTemplate(brokerChannel);
+        template.setMessageConverter(converter);
+
+        // Enough broadcasts for roughly a second of work per measurement
+        int broadcasts = Math.max(20, 200_000 / subscribers);
+        long tid = Thread.currentThread().getId();
+        long cpu = 0;
+        long allocated = 0;
+        for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+            long cpu0 = THREADS.getCurrentThreadCpuTime();
+            long alloc0 = THREADS.getThreadAllocatedBytes(tid);
+            for (int i = 0; i < broadcasts; i++) {
+                ChatMessage m = new ChatMessage(UUID.randomUUID().toString(), "sender" + (i % 50),
+                        "Benchmark message number " + i + " with some ordinary chat text", ChatMessage.MessageType.CHAT,
+                        LocalDateTime.now());
+                if (shared) {
+                    template.convertAndSend(TOPIC, m, Map.of("message-id", m.getId()));
+                } else {
+                    template.convertAndSend(TOPIC, m);
+                }
+            }
+            cpu = THREADS.getCurrentThreadCpuTime() - cpu0;
+            allocated = THREADS.getThreadAllocatedBytes(tid) - alloc0;
+        }
+
+        long delivered = sessions.stream().mapToLong(s -> s.delivered).sum();
+        long expected = (long) subscribers * broadcasts * (WARMUP_ROUNDS + 1);
+        if (delivered != expected) {
+            throw new IllegalStateException("Delivered " + delivered + " frames, expected " + expected);
+        }
+        subProtocol.stop();
+        broker.stop();
+        return new Result((double) cpu / broadcasts, (double) allocated / broadcasts);
+    }
+
+    private record Result(double cpuNanos, double allocatedBytes) {
+    }
+
+    /**
+     * Open session that performs the per-session encoding a SockJS WebSocket transport does, then discards the bytes.
+     */
+    private static final class FakeSession implements WebSocketSession {
+        private final String id;
+        private final SockJsMessageCodec codec;
+        private final Map<String, Object> attributes = new ConcurrentHashMap<>();
+        long delivered;
+        long bytes;
+
+        FakeSession(String id, SockJsMessageCodec codec) {
+            this.id = id;
+            this.codec = codec;
+        }
+
+        @Override
+        public void sendMessage(WebSocketMessage<?> message) {
+            if (message instanceof TextMessage text) {
+                String payload = text.getPayload();
+                if (payload.startsWith("MESSAGE")) delivered++;
+                bytes += codec.encode(payload).getBytes(StandardCharsets.UTF_8).length;
+            } else if (message instanceof BinaryMessage binary) {
+                bytes += binary.getPayloadLength();
+            }
+        }
+
+        @Override
+        public String getId() {
+            return id;
+        }
+
+        @Override
+        public URI getUri() {
+            return URI.create("ws://localhost/ws");
+        }
+
+        @Override
+        public HttpHeaders getHandshakeHeaders() {
+            return new HttpHeaders();
+        }
+
+        @Override
+        public Map<String, Object> getAttributes() {
+            return attributes;
+        }
+
+        @Override
+        public Principal getPrincipal() {
+            return null;
+        }
+
+        @Override
+        public InetSocketAddress getLocalAddress() {
+            return null;
+        }
+
+        @Override
+        public InetSocketAddress getRemoteAddress() {
+            return null;
+        }
+
+        @Override
+        public String getAcceptedProtocol() {
+            return "v12.stomp";
+        }
+
+        @Override
+        public void setTextMessageSizeLimit(int messageSizeLimit) {
+        }
+
+        @Override
+        public int getTextMessageSizeLimit() {
+            return 64 * 1024;
+        }
+
+        @Override
+        public void setBinaryMessageSizeLimit(int messageSizeLimit) {
+        }
+
+        @Override
+        public int getBinaryMessageSizeLimit() {
+            return 64 * 1024;
+        }
+
+        @Override
+        public List<WebSocketExtension> getExtensions() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public void close(CloseStatus status) {
+        }
+    }
+}
@@ -0,0 +1,374 @@
+package com.krushna.smallchat.websocket;
+
+import ch.qos.logback.classic.Level;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.client.WebSocketClient;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+import org.springframework.web.socket.sockjs.client.SockJsClient;
+import org.springframework.web.socket.sockjs.client.WebSocketTransport;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.reflect.Type;
+import java.net.CookieManager;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * End-to-end load against a running instance: opens many STOMP sessions over SockJS (or raw WebSocket), joins each
+ * through {@code /app/chat.addUser} and subscribes it to {@code /topic/public}, then publishes to
+ * {@code /app/chat.sendMessage} at a fixed total rate from those sessions, round-robin. Every delivery of every
+ * message to every session is one latency sample, measured from when the message was due to be sent, so a sender
+ * held up by the server still counts the wait. Reports, as HDR histogram percentile distributions (milliseconds):
+ * <ul>
+ *     <li>connection setup: handshake through STOMP {@code CONNECTED}, per session</li>
+ *     <li>send-to-receive latency on {@code /topic/public}, after the warmup</li>
+ * </ul>
+ * plus the server's heap and non-heap growth per session, read from {@code /actuator/metrics} (needs the app
+ * password; skipped without it). The distributions are also written as {@code .hgrm} files for the HdrHistogram
+ * plotter.
+ * <p>
+ * Not a unit test; start the app, then run it through the {@code loadtest} profile:
+ * <pre>
+ * mvn -Ploadtest -DskipTests verify -Dloadtest.args="--sessions=2000 --rate=200 --duration=60"
+ * </pre>
+ * Options ({@code --name=value}): {@code url} (http://localhost:8080), {@code transport} (sockjs | websocket),
+ * {@code sessions} (1000), {@code connect-concurrency} (50), {@code rate} (total messages/s, 100), {@code warmup}
+ * (seconds, 10), {@code duration} (seconds measured after the warmup, 60), {@code password} (APP_PASSWORD),
+ * {@code out} (target/loadtest).
+ */
+public class ChatLoadGenerator {
+
+    private static final String TOPIC = "/topic/public";
+    private static final String SEND = "/app/chat.sendMessage";
+    private static final String ADD_USER = "/app/chat.addUser";
+    private static final long CONNECT_TIMEOUT_S = 30;
+    private static final long DRAIN_TIMEOUT_MS = 10_000;
+    private static final int MEMORY_SAMPLES = 5;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    // Content of every message this run sends starts with it, so traffic from other clients is ignored
+    private final String runId = UUID.randomUUID().toString().substring(0, 8);
+
+    // Microseconds; both resize as needed
+    private final Histogram connectLatency = new ConcurrentHistogram(3);
+    private final Histogram deliveryLatency = new ConcurrentHistogram(3);
+
+    private final AtomicInteger connectFailures = new AtomicInteger();
+    private final AtomicInteger dropped = new AtomicInteger();
+    private final AtomicInteger sendFailures = new AtomicInteger();
+    private final AtomicLong frames = new AtomicLong();
+    private final AtomicLong measuredDeliveries = new AtomicLong();
+    private final List<StompSession> sessions = Collections.synchronizedList(new ArrayList<>());
+
+    // Messages due before this nanoTime are warmup: delivered and counted, but not recorded
+    private volatile long measureFrom = Long.MAX_VALUE;
+
+    private final Map<String, String> options;
+    private final String url;
+    private final int sessionCount;
+    private final double rate;
+
+    private ChatLoadGenerator(Map<String, String> options) {
+        this.options = options;
+        this.url = option("url", "http://localhost:8080").replaceAll("/+$", "");
+        this.sessionCount = Integer.parseInt(option("sessions", "1000"));
+        this.rate = Double.parseDouble(option("rate", "100"));
+    }
+
+    public static void main(String[] args) throws Exception {
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Expected --name=value, got " + arg);
+            }
+            options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+        }
+        new ChatLoadGenerator(options).run();
+        System.exit(0);
+    }
+
+    private String option(String name, String defaultValue) {
+        return options.getOrDefault(name, defaultValue);
+    }
+
+    private void run() throws Exception {
+        String transport = option("transport", "sockjs");
+        WebSocketClient webSocket = new StandardWebSocketClient();
+        WebSocketStompClient stomp = new WebSocketStompClient("websocket".equals(transport)
+                ? webSocket : new SockJsClient(List.of(new WebSocketTransport(webSocket))));
+        // SockJS heartbeats keep the sessions alive; STOMP ones would only add traffic
+        stomp.setDefaultHeartbeat(new long[]{0, 0});
+        String endpoint = "websocket".equals(transport) ? url.replaceFirst("^http", "ws") + "/ws/websocket" : url + "/ws";
+
+        ServerMetrics server = new ServerMetrics(option("password", System.getenv("APP_PASSWORD")));
+        Memory before = server.memory();
+
+        System.out.printf("Run %s: opening %d %s sessions to %s%n", runId, sessionCount, transport, endpoint);
+        long connectStart = System.nanoTime();
+        connect(stomp, endpoint, Integer.parseInt(option("connect-concurrency", "50")));
+        double connectSeconds = (System.nanoTime() - connectStart) / 1e9;
+        int connected = sessions.size();
+        if (connected == 0) {
+            throw new IllegalStateException("No session connected to " + endpoint);
+        }
+
+        // Let the join broadcasts settle before sampling the server
+        awaitQuiet();
+        Memory after = server.memory();
+        Integer serverSessions = server.sessions();
+
+        long warmupNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(option("warmup", "10")));
+        long durationNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(option("duration", "60")));
+        System.out.printf("Sending %.0f messages/s for %ds warmup + %ds%n", rate,
+                TimeUnit.NANOSECONDS.toSeconds(warmupNanos), TimeUnit.NANOSECONDS.toSeconds(durationNanos));
+        long measuredSent = send(warmupNanos, durationNanos);
+        long expected = measuredSent * sessions.size();
+        long drainDeadline = System.currentTimeMillis() + DRAIN_TIMEOUT_MS;
+        while (measuredDeliveries.get() < expected && System.currentTimeMillis() < drainDeadline) {
+            Thread.sleep(100);
+        }
+
+        PrintStream out = System.out;
+        out.println();
+        out.printf("Sessions: %d connected, %d failed, %.1fs (%.0f/s)%n", connected, connectFailures.get(),
+                connectSeconds, connected / connectSeconds);
+        if (serverSessions != null) {
+            out.printf("Server sessions: %d%n", serverSessions);
+        }
+        if (before != null && after != null) {
+            double grown = after.heap + after.nonHeap - before.heap - before.nonHeap;
+            // Heap in use includes garbage not yet collected; a collection between the samples can hide the growth
+            out.printf("Server memory: heap %+.1f MB, non-heap %+.1f MB, %s per session%n",
+                    (after.heap - before.heap) / 1e6, (after.nonHeap - before.nonHeap) / 1e6,
+                    grown > 0 ? String.format("%.1f KB", grown / 1e3 / connected) : "n/a (collected in between; use more sessions)");
+        } else {
+            out.println("Server memory: not measured (needs --password or APP_PASSWORD)");
+        }
+        out.printf("Messages: %d sent at %.0f/s to %d sessions, %d failed to send; %d of %d deliveries received%n",
+                measuredSent, measuredSent / (durationNanos / 1e9), sessions.size(), sendFailures.get(),
+                measuredDeliveries.get(), expected);
+        out.printf("Sessions dropped by transport errors: %d%n", dropped.get());
+        report(out, "Connection setup (ms)", connectLatency, "connect.hgrm");
+        report(out, "Send-to-receive latency (ms)", deliveryLatency, "latency.hgrm");
+
+        // Frames still in flight to closing sessions are logged as errors by the client; they are expected here
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(Level.OFF);
+        for (StompSession session : sessions) {
+            session.disconnect();
+        }
+        stomp.stop();
+    }
+
+    private void connect(WebSocketStompClient stomp, String endpoint, int concurrency) throws InterruptedException {
+        Semaphore inFlight = new Semaphore(concurrency);
+        for (int i = 0; i < sessionCount; i++) {
+            inFlight.acquire();
+            String user = "load-" + runId + "-" + i;
+            long start = System.nanoTime();
+            stomp.connectAsync(endpoint, new SessionHandler()).orTimeout(CONNECT_TIMEOUT_S, TimeUnit.SECONDS).whenComplete((session, error) -> {
+                try {
+                    if (error != null) {
+                        connectFailures.incrementAndGet();
+                        return;
+                    }
+                    connectLatency.recordValue((System.nanoTime() - start) / 1000);
+                    session.subscribe(TOPIC, new Receiver());
+                    session.send(headers(ADD_USER), json(user, user + " joined", "JOIN"));
+                    sessions.add(session);
+                } catch (RuntimeException e) {
+                    connectFailures.incrementAndGet();
+                } finally {
+                    inFlight.release();
+                }
+            });
+        }
+        inFlight.acquire(concurrency);
+    }
+
+    private void awaitQuiet() throws InterruptedException {
+        long last;
+        do {
+            last = frames.get();
+            Thread.sleep(1000);
+        } while (frames.get() != last);
+    }
+
+    /**
+     * Sends from one thread on a fixed schedule. A send that falls behind goes out at once, still stamped with
+     * the time it was due, so latency covers the delay instead of hiding it.
+     */
+    private long send(long warmupNanos, long durationNanos) {
+        long interval = (long) (1e9 / rate);
+        long start = System.nanoTime();
+        measureFrom = start + warmupNanos;
+        long end = measureFrom + durationNanos;
+        long measured = 0;
+        List<StompSession> senders = new ArrayList<>(sessions);
+        for (long i = 0; ; i++) {
+            long due = start + i * interval;
+            if (due >= end) break;
+            long wait = due - System.nanoTime();
+            if (wait > 0) LockSupport.parkNanos(wait);
+            StompSession session = senders.get((int) (i % senders.size()));
+            if (!session.isConnected()) continue;
+            try {
+                session.send(headers(SEND), json("load-" + runId, runId + ":" + due, "CHAT"));
+                if (due >= measureFrom) measured++;
+            } catch (RuntimeException e) {
+                sendFailures.incrementAndGet();
+            }
+        }
+        return measured;
+    }
+
+    private void onFrame(byte[] payload) {
+        long now = System.nanoTime();
+        frames.incrementAndGet();
+        JsonNode frame;
+        try {
+            frame = mapper.readTree(payload);
+        } catch (IOException e) {
+            return;
+        }
+        // A coalesced frame is a JSON array of messages
+        for (JsonNode message : frame.isArray() ? frame : List.of(frame)) {
+            String content = message.path("content").asText("");
+            if (!"CHAT".equals(message.path("type").asText()) || !content.startsWith(runId + ":")) continue;
+            long due = Long.parseLong(content.substring(runId.length() + 1));
+            if (due >= measureFrom) {
+                measuredDeliveries.incrementAndGet();
+                deliveryLatency.recordValue(Math.max(0, now - due) / 1000);
+            }
+        }
+    }
+
+    private static StompHeaders headers(String destination) {
+        StompHeaders headers = new StompHeaders();
+        headers.setDestination(destination);
+        headers.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        return headers;
+    }
+
+    private byte[] json(String sender, String content, String type) {
+        ObjectNode message = mapper.createObjectNode();
+        message.put("sender", sender);
+        message.put("content", content);
+        message.put("type", type);
+        try {
+            return mapper.writeValueAsBytes(message);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void report(PrintStream out, String title, Histogram histogram, String file) throws IOException {
+        out.println();
+        out.println(title);
+        histogram.outputPercentileDistribution(out, 1000.0);
+        Path dir = Path.of(option("out", "target/loadtest"));
+        Files.createDirectories(dir);
+        try (PrintStream hgrm = new PrintStream(Files.newOutputStream(dir.resolve(file)), false, StandardCharsets.UTF_8)) {
+            histogram.outputPercentileDistribution(hgrm, 1000.0);
+        }
+        out.println("Written to " + dir.resolve(file));
+    }
+
+    private class SessionHandler extends StompSessionHandlerAdapter {
+        @Override
+        public void handleTransportError(StompSession session, Throwable exception) {
+            if (sessions.contains(session)) dropped.incrementAndGet();
+        }
+    }
+
+    private class Receiver implements StompFrameHandler {
+        @Override
+        public Type getPayloadType(StompHeaders headers) {
+            return byte[].class;
+        }
+
+        @Override
+        public void handleFrame(StompHeaders headers, Object payload) {
+            onFrame((byte[]) payload);
+        }
+    }
+
+    private record Memory(double heap, double nonHeap) {
+    }
+
+    /**
+     * Reads the server's own meters. Actuator sits behind the login form, so this logs in once with the app password
+     * and reuses the session cookie.
+     */
+    private class ServerMetrics {
+        private final HttpClient http = HttpClient.newBuilder().cookieHandler(new CookieManager()).build();
+        private final boolean enabled;
+
+        ServerMetrics(String password) throws IOException, InterruptedException {
+            boolean loggedIn = false;
+            if (password != null && !password.isEmpty()) {
+                HttpRequest login = HttpRequest.newBuilder(URI.create(url + "/login"))
+                        .header("Content-Type", "application/x-www-form-urlencoded")
+                        .POST(HttpRequest.BodyPublishers.ofString("password="
+                                + java.net.URLEncoder.encode(password, StandardCharsets.UTF_8)))
+                        .build();
+                HttpResponse<Void> response = http.send(login, HttpResponse.BodyHandlers.discarding());
+                loggedIn = response.headers().firstValue("Location").map(l -> !l.contains("error")).orElse(false);
+                if (!loggedIn) System.out.println("Login failed; server metrics will be skipped");
+            }
+            this.enabled = loggedIn;
+        }
+
+        // Smallest of a few samples a second apart: garbage comes and goes, retained memory stays
+        Memory memory() throws IOException, InterruptedException {
+            if (!enabled) return null;
+            double heap = Double.MAX_VALUE;
+            double nonHeap = Double.MAX_VALUE;
+            for (int i = 0; i < MEMORY_SAMPLES; i++) {
+                if (i > 0) Thread.sleep(1000);
+                heap = Math.min(heap, value("jvm.memory.used?tag=area:heap"));
+                nonHeap = Math.min(nonHeap, value("jvm.memory.used?tag=area:nonheap"));
+            }
+            return new Memory(heap, nonHeap);
+        }
+
+        Integer sessions() throws IOException, InterruptedException {
+            return enabled ? (int) value("smallchat.websocket.sessions") : null;
+        }
+
+        private double value(String meter) throws IOException, InterruptedException {
+            HttpRequest request = HttpRequest.newBuilder(URI.create(url + "/actuator/metrics/" + meter)).build();
+            String body = http.send(request, HttpResponse.BodyHandlers.ofString()).body();
+            return mapper.readTree(body).path("measurements").path(0).path("value").asDouble();
+        }
+    }
+}